@@ -0,0 +1,79 @@
+package jpsgcs.alun.bench;
+
+import java.util.Arrays;
+
+/**
+ A single timed operation. The harness calls setup() once, then for each
+ iteration calls reset() untimed and run() timed. Warm up iterations are
+ made first so that the JIT has compiled the code being measured.
+ run() returns a value that is summed into a sink so that its work cannot
+ be optimized away.
+*/
+abstract public class Benchmark
+{
+	public Benchmark(String name)
+	{
+		this.name = name;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public void setup()
+	{
+	}
+
+	public void reset()
+	{
+	}
+
+	abstract public double run();
+
+/**
+ Times the benchmark and returns the time in milliseconds of each
+ measured iteration.
+*/
+	public double[] measure(int warmup, int iterations)
+	{
+		setup();
+
+		for (int k=0; k<warmup; k++)
+		{
+			reset();
+			sink += run();
+		}
+
+		double[] t = new double[iterations];
+		for (int k=0; k<iterations; k++)
+		{
+			reset();
+			long s = System.nanoTime();
+			sink += run();
+			t[k] = (System.nanoTime() - s) / 1e6;
+		}
+
+		return t;
+	}
+
+/**
+ Formats the median, minimum and maximum of the times as one line.
+*/
+	public String report(double[] t)
+	{
+		double[] s = t.clone();
+		Arrays.sort(s);
+		double med = s.length % 2 == 1 ? s[s.length/2] : (s[s.length/2-1] + s[s.length/2])/2;
+		return String.format("%-40s %10.3f %10.3f %10.3f  ms", name, med, s[0], s[s.length-1]);
+	}
+
+/**
+ Read by the runner after all benchmarks so the sink stays live.
+*/
+	public static double sink = 0;
+
+// Private data.
+
+	private String name = null;
+}
@@ -0,0 +1,340 @@
+package jpsgcs.alun.bench;
+
+import jpsgcs.alun.graph.Network;
+import jpsgcs.alun.graph.ArrayLocatedGraph;
+import jpsgcs.alun.graph.LocatedMaskedGraph;
+import jpsgcs.alun.graph.GraphLocator;
+import jpsgcs.alun.graph.LocalLocator;
+import jpsgcs.alun.graph.RootedLocalLocator;
+import jpsgcs.alun.graph.DAGLocator;
+import jpsgcs.alun.viewgraph.PaintableGraph;
+import jpsgcs.alun.util.UniformGrid;
+import jpsgcs.alun.util.IntArray;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ Runs the benchmarks for the locators, the uniform grid, the graph
+ structures and painting, and prints the median, minimum and maximum
+ time of an operation for each.
+
+ The benchmarks are kept out of the jar and the R package. To run them,
+ from the top of the source tree:
+
+	mkdir -p /tmp/bench
+	javac -d /tmp/bench $(find java bench -name '*.java')
+	java -Djava.awt.headless=true -cp /tmp/bench jpsgcs.alun.bench.RunBenchmarks [options] [filter]
+
+ Only benchmarks whose names contain the filter string are run.
+ The options are:
+
+	-sizes n,n,...	graph sizes to use, default 1000,10000
+	-warmup n	untimed iterations before timing, default 5
+	-iterations n	timed iterations, default 10
+	-seed s		seed for the graphs and starting positions, default 1
+
+ All graphs and positions are made from the seed, so the same work is
+ timed on each run and numbers from before and after a change can be
+ compared directly.
+*/
+public class RunBenchmarks
+{
+	public static void main(String[] args)
+	{
+		int[] sizes = {1000, 10000};
+		int warmup = 5;
+		int iterations = 10;
+		String filter = "";
+
+		for (int i=0; i<args.length; i++)
+		{
+			if (args[i].equals("-sizes"))
+			{
+				String[] s = args[++i].split(",");
+				sizes = new int[s.length];
+				for (int j=0; j<s.length; j++)
+					sizes[j] = Integer.parseInt(s[j]);
+			}
+			else if (args[i].equals("-warmup"))
+				warmup = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-iterations"))
+				iterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-seed"))
+				seed = Long.parseLong(args[++i]);
+			else
+				filter = args[i];
+		}
+
+		List<Benchmark> list = new ArrayList<Benchmark>();
+		for (int n : sizes)
+		{
+			for (String kind : new String[] {"random", "grid", "tree", "scalefree"})
+			{
+				list.add(new MoveBenchmark("local", kind, n));
+				list.add(new MoveBenchmark("rooted", kind, n));
+				list.add(new MoveBenchmark("dag", kind, n));
+			}
+
+			list.add(new GridBenchmark(n));
+			list.add(new ConnectBenchmark(n));
+			list.add(new NeighbourBenchmark(n));
+			list.add(new MaskedVerticesBenchmark(n));
+			list.add(new PaintBenchmark(n));
+		}
+
+		System.out.println(String.format("%-40s %10s %10s %10s", "benchmark", "median", "min", "max"));
+		for (Benchmark b : list)
+		{
+			if (b.getName().indexOf(filter) < 0)
+				continue;
+			System.out.println(b.report(b.measure(warmup,iterations)));
+		}
+
+		if (Benchmark.sink == 0.12345)
+			System.out.println();
+	}
+
+// Private data and classes.
+
+	private static long seed = 1;
+
+	private static Network<Integer,Object> make(String kind, int n, boolean directed)
+	{
+		if (kind.equals("random"))
+			return SyntheticGraphs.random(n,4,seed,directed);
+		if (kind.equals("grid"))
+			return SyntheticGraphs.grid(n,directed);
+		if (kind.equals("tree"))
+			return SyntheticGraphs.tree(n,seed,directed);
+		return SyntheticGraphs.scaleFree(n,2,seed,directed);
+	}
+
+	// Ten sweeps of a locator from the same random start each time.
+
+	private static class MoveBenchmark extends Benchmark
+	{
+		MoveBenchmark(String loc, String kind, int n)
+		{
+			super(loc+".move "+kind+" "+n);
+			this.loc = loc;
+			this.kind = kind;
+			this.n = n;
+		}
+
+		public void setup()
+		{
+			boolean dag = loc.equals("dag");
+			g = new ArrayLocatedGraph<Integer,Object>(make(kind,n,dag));
+			l = loc.equals("local") ? new LocalLocator<Integer,Object>() :
+				loc.equals("rooted") ? new RootedLocalLocator<Integer,Object>() :
+				new DAGLocator<Integer,Object>();
+
+			Random r = new Random(seed);
+			vs = g.getVertices().toArray(new Integer[0]);
+			x = new double[vs.length];
+			y = new double[vs.length];
+			for (int i=0; i<vs.length; i++)
+			{
+				x[i] = r.nextDouble()*1000 - 500;
+				y[i] = r.nextDouble()*1000 - 500;
+			}
+		}
+
+		public void reset()
+		{
+			for (int i=0; i<vs.length; i++)
+				g.setCoord(vs[i],x[i],y[i]);
+		}
+
+		public double run()
+		{
+			double d = 0;
+			for (int k=0; k<10; k++)
+				d += l.move(g);
+			return d;
+		}
+
+		private String loc = null;
+		private String kind = null;
+		private int n = 0;
+		private ArrayLocatedGraph<Integer,Object> g = null;
+		private GraphLocator<Integer,Object> l = null;
+		private Integer[] vs = null;
+		private double[] x = null;
+		private double[] y = null;
+	}
+
+	// Building the grid and querying it once for each point.
+
+	private static class GridBenchmark extends Benchmark
+	{
+		GridBenchmark(int n)
+		{
+			super("UniformGrid.getLocal "+n);
+			this.n = n;
+		}
+
+		public void setup()
+		{
+			Random r = new Random(seed);
+			double side = 100 * Math.sqrt(n);
+			x = new double[n];
+			y = new double[n];
+			for (int i=0; i<n; i++)
+			{
+				x[i] = r.nextDouble()*side;
+				y[i] = r.nextDouble()*side;
+			}
+		}
+
+		public double run()
+		{
+			p.build(n,x,y,100);
+			double s = 0;
+			for (int i=0; i<n; i++)
+				s += p.getLocal(x[i],y[i],100,x,y,l);
+			return s;
+		}
+
+		private int n = 0;
+		private double[] x = null;
+		private double[] y = null;
+		private UniformGrid p = new UniformGrid();
+		private IntArray l = new IntArray();
+	}
+
+	// Adding the edges of a scale free graph to an empty network.
+
+	private static class ConnectBenchmark extends Benchmark
+	{
+		ConnectBenchmark(int n)
+		{
+			super("GraphSkeleton.connect "+n);
+			this.n = n;
+		}
+
+		public void setup()
+		{
+			Network<Integer,Object> g = make("scalefree",n,false);
+			IntArray a = new IntArray();
+			IntArray b = new IntArray();
+			for (Integer v : g.getVertices())
+				for (Integer u : g.getNeighbours(v))
+					if (v < u)
+					{
+						a.add(v);
+						b.add(u);
+					}
+			from = a;
+			to = b;
+		}
+
+		public double run()
+		{
+			Network<Integer,Object> g = new Network<Integer,Object>();
+			for (int i=0; i<n; i++)
+				g.add(i);
+			for (int k=0; k<from.size(); k++)
+				g.connect(from.get(k),to.get(k));
+			return g.getVertices().size();
+		}
+
+		private int n = 0;
+		private IntArray from = null;
+		private IntArray to = null;
+	}
+
+	// Iterating over the neighbours of every vertex.
+
+	private static class NeighbourBenchmark extends Benchmark
+	{
+		NeighbourBenchmark(int n)
+		{
+			super("GraphSkeleton.getNeighbours "+n);
+			this.n = n;
+		}
+
+		public void setup()
+		{
+			g = make("scalefree",n,false);
+		}
+
+		public double run()
+		{
+			double s = 0;
+			for (Integer v : g.getVertices())
+				for (Integer u : g.getNeighbours(v))
+					s += u;
+			return s;
+		}
+
+		private int n = 0;
+		private Network<Integer,Object> g = null;
+	}
+
+	// Getting the shown vertices with a tenth of them hidden.
+
+	private static class MaskedVerticesBenchmark extends Benchmark
+	{
+		MaskedVerticesBenchmark(int n)
+		{
+			super("LocatedMaskedGraph.getVertices "+n);
+			this.n = n;
+		}
+
+		public void setup()
+		{
+			g = new LocatedMaskedGraph<Integer,Object>(make("random",n,false));
+			for (int i=0; i<n; i+=10)
+				g.hide(i);
+		}
+
+		public double run()
+		{
+			double s = 0;
+			for (int k=0; k<10; k++)
+				s += g.getVertices().size();
+			return s;
+		}
+
+		private int n = 0;
+		private LocatedMaskedGraph<Integer,Object> g = null;
+	}
+
+	// Painting the whole graph into an offscreen image.
+
+	private static class PaintBenchmark extends Benchmark
+	{
+		PaintBenchmark(int n)
+		{
+			super("PaintableGraph.paint "+n);
+			this.n = n;
+		}
+
+		public void setup()
+		{
+			g = new PaintableGraph<Integer,Object>(make("random",n,false));
+			Random r = new Random(seed);
+			for (Integer v : g.getVertices())
+				g.setCoord(v,r.nextDouble()*1000-500,r.nextDouble()*1000-500);
+			im = new BufferedImage(1000,1000,BufferedImage.TYPE_INT_RGB);
+		}
+
+		public double run()
+		{
+			Graphics2D gr = im.createGraphics();
+			gr.translate(500,500);
+			g.paint(gr);
+			gr.dispose();
+			return im.getRGB(500,500);
+		}
+
+		private int n = 0;
+		private PaintableGraph<Integer,Object> g = null;
+		private BufferedImage im = null;
+	}
+}
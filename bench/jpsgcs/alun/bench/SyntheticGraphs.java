@@ -0,0 +1,115 @@
+package jpsgcs.alun.bench;
+
+import jpsgcs.alun.graph.Network;
+import java.util.Random;
+
+/**
+ Makes graphs of given sizes for benchmarking. All take a seed so that
+ the same graph is made on every run. Vertices are the Integers 0 to n-1,
+ as in the graphs read by RViewGraph.
+*/
+public class SyntheticGraphs
+{
+/**
+ A random graph with n vertices and about n*d/2 edges.
+*/
+	public static Network<Integer,Object> random(int n, double d, long seed, boolean directed)
+	{
+		Random r = new Random(seed);
+		Network<Integer,Object> g = vertices(n,directed);
+		long m = (long)(n*d/2);
+		for (long k=0; k<m; k++)
+		{
+			int i = r.nextInt(n);
+			int j = r.nextInt(n);
+			if (i != j)
+				connect(g,i,j,directed);
+		}
+		return g;
+	}
+
+/**
+ A square grid with about n vertices, each joined to the ones to its right and below.
+*/
+	public static Network<Integer,Object> grid(int n, boolean directed)
+	{
+		int s = (int) Math.ceil(Math.sqrt(n));
+		Network<Integer,Object> g = vertices(s*s,directed);
+		for (int i=0; i<s; i++)
+			for (int j=0; j<s; j++)
+			{
+				int v = i*s+j;
+				if (j+1 < s)
+					connect(g,v,v+1,directed);
+				if (i+1 < s)
+					connect(g,v,v+s,directed);
+			}
+		return g;
+	}
+
+/**
+ A random tree with n vertices, each vertex after the first joined
+ to one chosen uniformly from those before it.
+*/
+	public static Network<Integer,Object> tree(int n, long seed, boolean directed)
+	{
+		Random r = new Random(seed);
+		Network<Integer,Object> g = vertices(n,directed);
+		for (int i=1; i<n; i++)
+			connect(g,r.nextInt(i),i,directed);
+		return g;
+	}
+
+/**
+ A scale free graph with n vertices made by preferential attachment,
+ each new vertex being joined to m earlier ones chosen with probability
+ proportional to their degree.
+*/
+	public static Network<Integer,Object> scaleFree(int n, int m, long seed, boolean directed)
+	{
+		Random r = new Random(seed);
+		Network<Integer,Object> g = vertices(n,directed);
+
+		// Each edge puts both its ends in ends[], so picking an entry
+		// uniformly picks a vertex with probability proportional to degree.
+
+		int[] ends = new int[2*n*m+2];
+		int k = 0;
+		ends[k++] = 0;
+		for (int i=1; i<n; i++)
+		{
+			int c = Math.min(m,i);
+			for (int e=0; e<c; e++)
+			{
+				int j = ends[r.nextInt(k)];
+				if (j != i && !g.connects(j,i))
+				{
+					connect(g,j,i,directed);
+					ends[k++] = j;
+					ends[k++] = i;
+				}
+			}
+			if (g.getNeighbours(i).isEmpty())
+				ends[k++] = i;
+		}
+		return g;
+	}
+
+// Private methods.
+
+	private static Network<Integer,Object> vertices(int n, boolean directed)
+	{
+		Network<Integer,Object> g = new Network<Integer,Object>(directed);
+		for (int i=0; i<n; i++)
+			g.add(i);
+		return g;
+	}
+
+	private static void connect(Network<Integer,Object> g, int i, int j, boolean directed)
+	{
+		if (directed && i > j)
+			g.connect(j,i);
+		else
+			g.connect(i,j);
+	}
+}
@@ -5,7 +5,6 @@ import java.awt.Graphics;
 import java.awt.Frame;
 import java.awt.Graphics2D;
 import java.awt.Dimension;
-import java.awt.Image;
 import java.awt.Color;
 import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
@@ -90,25 +89,21 @@ public class ActiveCanvas extends BufferedCanvas
 				((Frame)c).pack();
 			}
 
-			if (ima == null || ima.getHeight(null)!=d.height || ima.getWidth(null)!=d.width)
-				ima = createImage(d.width,d.height);
-	
-			// Draw a background to the image.
-			Graphics gg = ima.getGraphics();
-			gg.setColor(getBackground());
-			gg.fillRect(0,0,d.width,d.height);
-	
-			// Transform the coordinates.
-			((Graphics2D)gg).transform(trans);
+			// Draw the frame into the reused buffer, clipped to the canvas so
+			// that painters can leave out what won't be seen, and draw it
+			// again if the buffer loses it.
+
+			boolean done = false;
+			while (!done)
+			{
+				Graphics2D gg = buffer.begin(d.width,d.height,getBackground());
+				gg.transform(trans);
+				paint(gg);
+				done = buffer.end(gg);
+			}
 	
-			// Paint the background image.
-			paint(gg);
-				
 			// Flash the image to the screen.
-			super.getGraphics().drawImage(ima,0,0,null);
-	
-			// Clean up.
-			gg.dispose();
+			g.drawImage(buffer.getImage(),0,0,null);
 		}
 		catch (ConcurrentModificationException e)
 		{
@@ -197,7 +192,7 @@ public class ActiveCanvas extends BufferedCanvas
 // Private data, methods and classes.
 
 	private AffineTransform trans = null;
-	private Image ima = null;
+	private RenderBuffer buffer = new VolatileBuffer(this);
 	private boolean axes = true;
 	private PaperTypes paper = null;
 
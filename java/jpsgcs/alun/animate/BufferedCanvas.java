@@ -2,7 +2,7 @@ package jpsgcs.alun.animate;
 
 import java.awt.Canvas;
 import java.awt.Graphics;
-import java.awt.Image;
+import java.awt.Graphics2D;
 import java.awt.Dimension;
 import java.awt.event.ComponentListener;
 import java.awt.event.ComponentEvent;
@@ -24,24 +24,18 @@ public class BufferedCanvas extends Canvas implements ComponentListener
 
 	public void update(Graphics g)
 	{
-		// Create a buffer image.
+		// Draw into the reused buffer image, again if it is lost.
 		Dimension d = getSize();
-		if (ima == null || ima.getHeight(null)!=d.height || ima.getWidth(null)!=d.width)
-			ima = createImage(d.width,d.height);
-
-		// Draw a background to the image.
-		Graphics gg = ima.getGraphics();
-		gg.setColor(getBackground());
-		gg.fillRect(0,0,d.width,d.height);
-
-		// Paint the background image.
-		paint(gg);
+		boolean done = false;
+		while (!done)
+		{
+			Graphics2D gg = buffer.begin(d.width,d.height,getBackground());
+			paint(gg);
+			done = buffer.end(gg);
+		}
 			
 		// Flash the image to the screen.
-		g.drawImage(ima,0,0,null);
-
-		// Clean up.
-		gg.dispose();
+		g.drawImage(buffer.getImage(),0,0,null);
 	}
 
 	public Paintable getPainter()
@@ -76,6 +70,6 @@ public class BufferedCanvas extends Canvas implements ComponentListener
 
 // Private data.
 
-	private Image ima = null;
+	private RenderBuffer buffer = new VolatileBuffer(this);
 	private Paintable painter = null;
 }
@@ -0,0 +1,65 @@
+package jpsgcs.alun.animate;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.imageio.ImageIO;
+
+/**
+	A RenderBuffer that draws into a BufferedImage held in memory.
+	It needs no display, so can be used to make pictures on a headless
+	machine, and the frames can be written out as PNG files.
+*/
+
+public class ImageBuffer extends RenderBuffer
+{
+	public Graphics2D begin(int width, int height, Color background)
+	{
+		if (ima == null || ima.getWidth() != width || ima.getHeight() != height)
+			ima = new BufferedImage(Math.max(1,width),Math.max(1,height),BufferedImage.TYPE_INT_RGB);
+
+		Graphics2D g = ima.createGraphics();
+		g.setColor(background);
+		g.fillRect(0,0,width,height);
+		g.setClip(0,0,width,height);
+		return g;
+	}
+
+	public boolean end(Graphics2D g)
+	{
+		g.dispose();
+		return true;
+	}
+
+	public BufferedImage getImage()
+	{
+		return ima;
+	}
+
+/**
+	Writes the last frame to the given file in PNG format.
+*/
+	public void writePNG(String file) throws IOException
+	{
+		if (ima == null || !ImageIO.write(ima,"png",new File(file)))
+			throw new IOException("Can't write image to "+file);
+	}
+
+/**
+	Writes the last frame to the given stream in PNG format.
+*/
+	public void writePNG(OutputStream out) throws IOException
+	{
+		if (ima == null || !ImageIO.write(ima,"png",out))
+			throw new IOException("Can't write image");
+	}
+
+// Private data.
+
+	private BufferedImage ima = null;
+}
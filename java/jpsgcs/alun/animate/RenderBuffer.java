@@ -0,0 +1,55 @@
+package jpsgcs.alun.animate;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.geom.AffineTransform;
+
+/**
+	An off screen image that frames are drawn into before they are shown
+	or saved. The image is kept and used again for the next frame as long
+	as the size stays the same.
+
+	A frame is drawn by getting a Graphics from begin(), painting into it,
+	and calling end(). Some kinds of image can lose their contents, in
+	which case end() returns false and the frame should be drawn again.
+*/
+
+abstract public class RenderBuffer
+{
+/**
+	Returns a Graphics for drawing into an image of the given size that
+	has been filled with the background colour. Drawing is clipped to the
+	image.
+*/
+	abstract public Graphics2D begin(int width, int height, Color background);
+
+/**
+	Finishes the frame started by begin() and disposes of the Graphics.
+	Returns false if the contents of the image were lost while drawing.
+*/
+	abstract public boolean end(Graphics2D g);
+
+/**
+	Returns the image that the last frame was drawn into.
+*/
+	abstract public Image getImage();
+
+/**
+	Draws a frame of the given size showing p through the transform t,
+	which may be null, drawing it again if it is lost. Returns the image.
+*/
+	public Image render(Paintable p, AffineTransform t, int width, int height, Color background)
+	{
+		boolean done = false;
+		while (!done)
+		{
+			Graphics2D g = begin(width,height,background);
+			if (t != null)
+				g.transform(t);
+			p.paint(g);
+			done = end(g);
+		}
+		return getImage();
+	}
+}
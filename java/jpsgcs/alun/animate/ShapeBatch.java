@@ -0,0 +1,107 @@
+package jpsgcs.alun.animate;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.Map;
+import java.util.LinkedHashMap;
+
+/**
+	Collects lines and polygons and draws them together, one path for
+	each colour, rather than one call to the Graphics for each shape.
+	This saves the per call cost of setting up the Graphics, which
+	dominates when many small shapes are drawn.
+
+	When drawn, all the lines go first, then the polygons are filled,
+	and then the polygons are outlined. The paths are kept and reused
+	between frames.
+*/
+
+public class ShapeBatch
+{
+	public void line(Color c, int x1, int y1, int x2, int y2)
+	{
+		Path2D.Float p = path(lines,c);
+		p.moveTo(x1,y1);
+		p.lineTo(x2,y2);
+	}
+
+/**
+	Adds the polygon with the first n of the given vertices, to be filled
+	with one colour and outlined with another. Either colour may be null.
+*/
+	public void polygon(Color fill, Color edge, int[] x, int[] y, int n)
+	{
+		if (fill != null)
+			polygon(path(fills,fill),x,y,n);
+		if (edge != null)
+			polygon(path(edges,edge),x,y,n);
+	}
+
+/**
+	Draws everything collected since the last call, then empties the batch.
+*/
+	public void draw(Graphics2D g)
+	{
+		for (Map.Entry<Color,Path2D.Float> e : lines.entrySet())
+			if (e.getValue().getCurrentPoint() != null)
+			{
+				g.setColor(e.getKey());
+				g.draw(e.getValue());
+			}
+
+		for (Map.Entry<Color,Path2D.Float> e : fills.entrySet())
+			if (e.getValue().getCurrentPoint() != null)
+			{
+				g.setColor(e.getKey());
+				g.fill(e.getValue());
+			}
+
+		for (Map.Entry<Color,Path2D.Float> e : edges.entrySet())
+			if (e.getValue().getCurrentPoint() != null)
+			{
+				g.setColor(e.getKey());
+				g.draw(e.getValue());
+			}
+
+		clear();
+	}
+
+/**
+	Empties the batch without drawing it.
+*/
+	public void clear()
+	{
+		for (Path2D.Float p : lines.values())
+			p.reset();
+		for (Path2D.Float p : fills.values())
+			p.reset();
+		for (Path2D.Float p : edges.values())
+			p.reset();
+	}
+
+// Private data and methods.
+
+	private Map<Color,Path2D.Float> lines = new LinkedHashMap<Color,Path2D.Float>();
+	private Map<Color,Path2D.Float> fills = new LinkedHashMap<Color,Path2D.Float>();
+	private Map<Color,Path2D.Float> edges = new LinkedHashMap<Color,Path2D.Float>();
+
+	private Path2D.Float path(Map<Color,Path2D.Float> m, Color c)
+	{
+		Path2D.Float p = m.get(c);
+		if (p == null)
+		{
+			p = new Path2D.Float();
+			m.put(c,p);
+		}
+		return p;
+	}
+
+	private void polygon(Path2D.Float p, int[] x, int[] y, int n)
+	{
+		p.moveTo(x[0],y[0]);
+		for (int i=1; i<n; i++)
+			p.lineTo(x[i],y[i]);
+		p.closePath();
+	}
+}
@@ -0,0 +1,71 @@
+package jpsgcs.alun.animate;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.image.VolatileImage;
+
+/**
+	A RenderBuffer that draws into a VolatileImage made for a component,
+	which can be kept in video memory and drawn to the screen quickly.
+	The image is checked against the component's display before each
+	frame, and made again if it no longer suits it. Until the component
+	is displayable, and where there is no display, frames are drawn into
+	an ImageBuffer instead.
+*/
+
+public class VolatileBuffer extends RenderBuffer
+{
+	public VolatileBuffer(Component c)
+	{
+		comp = c;
+	}
+
+	public Graphics2D begin(int width, int height, Color background)
+	{
+		GraphicsConfiguration gc = comp.getGraphicsConfiguration();
+
+		if (ima == null || ima.getWidth() != width || ima.getHeight() != height)
+			ima = comp.createVolatileImage(Math.max(1,width),Math.max(1,height));
+		else if (gc != null && ima.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE)
+			ima = comp.createVolatileImage(width,height);
+
+		if (ima == null)
+			return fallback().begin(width,height,background);
+
+		Graphics2D g = ima.createGraphics();
+		g.setColor(background);
+		g.fillRect(0,0,width,height);
+		g.setClip(0,0,width,height);
+		return g;
+	}
+
+	public boolean end(Graphics2D g)
+	{
+		if (ima == null)
+			return fallback().end(g);
+
+		g.dispose();
+		return !ima.contentsLost();
+	}
+
+	public Image getImage()
+	{
+		return ima != null ? ima : fallback().getImage();
+	}
+
+// Private data and methods.
+
+	private Component comp = null;
+	private VolatileImage ima = null;
+	private ImageBuffer other = null;
+
+	private ImageBuffer fallback()
+	{
+		if (other == null)
+			other = new ImageBuffer();
+		return other;
+	}
+}
@@ -0,0 +1,599 @@
+package jpsgcs.alun.graph;
+
+import java.nio.DoubleBuffer;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+	A located, masked graph that keeps the vertex coordinates in a
+	CoordArray, indexed by a dense integer id given to each vertex
+	when it is first seen, rather than in a Coord object per vertex.
+
+	Coord objects are still made by getCoord() for code that wants
+	them, such as the mouse listeners, but only for the vertices
+	asked for. They are views of the arrays: sync() copies any changes
+	made to a view into the arrays, and then refreshes the views from
+	the arrays. Locators that work on the arrays call sync() before and
+	after each sweep. Only the views that are still referenced are
+	kept, so sync() costs nothing once they have been let go. Changes
+	made to a Coord are only copied by sync(), so code that changes one
+	should call sync() before letting it go.
+
+	A vertex that is itself a Coord starts at its own position, and is
+	kept as the view of its coordinates, so that moving it, or moving
+	the vertex in the arrays, moves both after sync().
+
+	When snapshot() finds that a vertex has been removed from the
+	underlying graph, its id and coordinates are released, and are
+	given to the next new vertex.
+
+	The vertices of a MappedGraph, 0 to n-1, are used as their own ids,
+	so no map from vertex to id is kept for them. If the mapped graph
+	has a coordinate file holding a layout, the layout starts from it.
+*/
+
+public class ArrayLocatedGraph<V,E> extends LocatedMaskedGraph<V,E>
+{
+	public ArrayLocatedGraph(Graph<V,E> graph)
+	{
+		super(graph,false);
+
+		if (graph instanceof MappedGraph)
+		{
+			MappedGraph m = (MappedGraph) graph;
+			mapped = m.size();
+			c = new CoordArray(mapped);
+			for (int i=0; i<mapped; i++)
+				c.add(10*GraphLocator.randu(),10*GraphLocator.randu());
+
+			DoubleBuffer b = m.savedCoords();
+			if (b != null)
+				setCoords(mapped,b);
+			return;
+		}
+
+		Collection<V> all = graph.getVertices();
+		c = new CoordArray(all.size());
+		for (V v : all)
+			index(v);
+	}
+
+/**
+	Returns the store for the coordinates.
+*/
+	public CoordArray coords()
+	{
+		return c;
+	}
+
+/**
+	Returns the id of the given vertex, giving it a new one,
+	with a random position, if it doesn't already have one.
+*/
+	synchronized public int index(V v)
+	{
+		if (mapped >= 0)
+		{
+			int k = indexOf(v);
+			if (k < 0)
+				throw new IllegalArgumentException(v+" is not a vertex of the mapped graph");
+			return k;
+		}
+
+		Integer i = ids.get(v);
+		if (i != null)
+			return i;
+
+		int j = 0;
+		if (v instanceof Coord)
+		{
+			Coord p = (Coord) v;
+			j = c.add(p.x,p.y);
+			c.copyFrom(j,p);
+			views.put(v,new View(v,j,p));
+		}
+		else
+		{
+			j = c.add(10*GraphLocator.randu(),10*GraphLocator.randu());
+		}
+
+		ids.put(v,j);
+		if (j < vertex.size())
+			vertex.set(j,v);
+		else
+			vertex.add(v);
+		return j;
+	}
+
+/**
+	Returns the id of the given vertex, or -1 if it has not got one.
+*/
+	public int indexOf(Object v)
+	{
+		if (mapped >= 0)
+		{
+			if (!(v instanceof Integer))
+				return -1;
+			int k = (Integer) v;
+			return k >= 0 && k < mapped ? k : -1;
+		}
+
+		Integer i = v == null ? null : ids.get(v);
+		return i == null ? -1 : i;
+	}
+
+/**
+	Returns the vertex with the given id, or null if the id
+	has been released.
+*/
+	@SuppressWarnings("unchecked")
+	public V vertex(int i)
+	{
+		if (mapped >= 0)
+			return i >= 0 && i < mapped ? (V) Integer.valueOf(i) : null;
+		return vertex.get(i);
+	}
+
+	public int size()
+	{
+		return c.size();
+	}
+
+/**
+	Returns the x coordinate of the given vertex, or NaN if it has
+	not got an id.
+*/
+	public double getX(V v)
+	{
+		int i = indexOf(v);
+		return i < 0 ? Double.NaN : c.x[i];
+	}
+
+/**
+	Returns the y coordinate of the given vertex, or NaN if it has
+	not got an id.
+*/
+	public double getY(V v)
+	{
+		int i = indexOf(v);
+		return i < 0 ? Double.NaN : c.y[i];
+	}
+
+	synchronized public void setCoord(V v, double x, double y)
+	{
+		int i = index(v);
+		c.set(i,x,y);
+		View w = views.get(v);
+		if (w != null)
+			w.refresh();
+		edits++;
+	}
+
+/**
+	Returns a number that goes up whenever something changes that a
+	locator would need to know about: the underlying graph, if it is a
+	VersionedGraph, which vertices are shown, or the coordinates, except
+	when they are changed directly in the arrays. Changes made to Coord
+	views are only seen after sync().
+*/
+	public long changes()
+	{
+		Graph<V,E> g = completeGraph();
+		long v = g instanceof VersionedGraph ? ((VersionedGraph<V,E>)g).version() : 0;
+		return v + masks + edits;
+	}
+
+/**
+	Returns a CSRGraph snapshot of the shown part of the graph indexed by
+	the vertex ids used for the coordinates. The snapshot is kept and
+	only made again when a vertex is shown or hidden, or when the version
+	of the underlying graph changes. Graphs that are not VersionedGraphs
+	get a new snapshot every time. Returns the last snapshot, or null if
+	there is none, if a graph that is not a ConcurrentGraph was changed
+	while it was being read.
+*/
+	synchronized public CSRGraph snapshot()
+	{
+		Graph<V,E> g = completeGraph();
+		long v = g instanceof VersionedGraph ? ((VersionedGraph<V,E>)g).version() : -1;
+
+		if (csr != null && v >= 0 && v == csrversion && masks == csrmasks)
+			return csr;
+
+		// A mapped graph has its rows in the right form already, with
+		// the ids the same as the vertices, as they were given in order
+		// when this was made.
+
+		if (g instanceof MappedGraph && getHidden().isEmpty())
+		{
+			csr = ((MappedGraph)g).snapshot();
+			csrversion = v;
+			csrmasks = masks;
+			return csr;
+		}
+
+		// Read a graph that is being changed by another thread
+		// from a copy that will not change.
+
+		if (g instanceof ConcurrentGraph)
+			g = ((ConcurrentGraph<V,E>)g).snapshot();
+
+		try
+		{
+			Collection<V> verts = shown(g.getVertices());
+			if (verts == null)
+				return csr;
+
+			if (v < 0 || v != csrversion)
+				release(g);
+
+			for (V u : verts)
+				index(u);
+
+			csr = CSRGraph.make(g,verts,mapped >= 0 ? new MappedIds() : ids,size());
+			csrversion = v;
+			csrmasks = masks;
+		}
+		catch (ConcurrentModificationException e)
+		{
+		}
+
+		return csr;
+	}
+
+/**
+	Copies changes made to the Coord views into the arrays, then
+	updates the views from the arrays. Views that are no longer
+	referenced are dropped first.
+*/
+	synchronized public void sync()
+	{
+		for (Reference<? extends Coord> r; (r = dropped.poll()) != null; )
+		{
+			View w = (View) r;
+			if (views.get(w.u) == w)
+				views.remove(w.u);
+		}
+
+		for (View w : views.values())
+			w.sync();
+	}
+
+/**
+	Copies the coordinates of the vertices with ids 0 to n-1 into
+	x[xoff] to x[xoff+n-1] and y[yoff] to y[yoff+n-1].
+*/
+	synchronized public void getCoords(int n, double[] x, int xoff, double[] y, int yoff)
+	{
+		sync();
+		System.arraycopy(c.x,0,x,xoff,n);
+		System.arraycopy(c.y,0,y,yoff,n);
+	}
+
+/**
+	Puts the coordinates of the vertices with ids 0 to n-1 into the
+	buffer, the n x coordinates followed by the n y coordinates,
+	from its current position.
+*/
+	synchronized public void getCoords(int n, DoubleBuffer b)
+	{
+		sync();
+		b.put(c.x,0,n);
+		b.put(c.y,0,n);
+	}
+
+/**
+	Sets the coordinates of the vertices with ids 0 to n-1 from the
+	buffer, which holds the n x coordinates followed by the n y
+	coordinates from its current position.
+*/
+	synchronized public void setCoords(int n, DoubleBuffer b)
+	{
+		sync();
+		b.get(c.x,0,n);
+		b.get(c.y,0,n);
+		sync();
+		edits++;
+	}
+
+/**
+	Sets the coordinates of the vertices with ids 0 to n-1 from
+	x[xoff] to x[xoff+n-1] and y[yoff] to y[yoff+n-1].
+*/
+	synchronized public void setCoords(int n, double[] x, int xoff, double[] y, int yoff)
+	{
+		sync();
+		System.arraycopy(x,xoff,c.x,0,n);
+		System.arraycopy(y,yoff,c.y,0,n);
+		sync();
+		edits++;
+	}
+
+/**
+	Scales the coordinates of all points about the origin.
+*/
+	synchronized public void scale(double s, double t)
+	{
+		sync();
+		double[] x = c.x;
+		double[] y = c.y;
+		for (int i=0; i<c.size(); i++)
+		{
+			x[i] *= s;
+			y[i] *= t;
+		}
+		sync();
+		edits++;
+	}
+
+/**
+	Rotates the coordinates of all points about the origin.
+*/
+	synchronized public void rotate(double s)
+	{
+		sync();
+		double[] x = c.x;
+		double[] y = c.y;
+		for (int i=0; i<c.size(); i++)
+		{
+			double r = Math.sqrt(x[i]*x[i] + y[i]*y[i]);
+			double t = Math.atan2(y[i],x[i]) + s;
+			x[i] = r * Math.cos(t);
+			y[i] = r * Math.sin(t);
+		}
+		sync();
+		edits++;
+	}
+
+// Mask interface
+
+	public void show(V x)
+	{
+		super.show(x);
+		masks++;
+	}
+
+	public void hide(V x)
+	{
+		super.hide(x);
+		masks++;
+	}
+
+// Located interface
+
+	public V find(double x, double y)
+	{
+		Collection<V> verts = getVertices();
+		if (verts == null)
+			return null;
+
+		double[] cx = c.x;
+		double[] cy = c.y;
+
+		V u = null;
+		double dd = Double.MAX_VALUE;
+		for (V v : verts)
+		{
+			int i = indexOf(v);
+			if (i < 0 || i >= cx.length)
+				continue;
+			double d = (x-cx[i])*(x-cx[i]) + (y-cy[i])*(y-cy[i]);
+			if (d < dd)
+			{
+				dd = d;
+				u = v;
+			}
+		}
+		return u;
+	}
+
+	synchronized public Coord getCoord(V v)
+	{
+		View w = views.get(v);
+		Coord p = w == null ? null : w.get();
+		if (p == null)
+		{
+			p = new Coord(0,0);
+			w = new View(v,index(v),p);
+			w.refresh();
+			views.put(v,w);
+		}
+		return p;
+	}
+
+/**
+	Returns a list of the Coords of the vertices that have ids. The
+	Coords are made by getCoord() as the list is read, rather than all
+	at once.
+*/
+	public Collection<Coord> getCoords()
+	{
+		final List<V> l;
+		if (mapped >= 0)
+		{
+			l = new AbstractList<V>()
+			{
+				public V get(int i)
+				{
+					return vertex(i);
+				}
+
+				public int size()
+				{
+					return mapped;
+				}
+			};
+		}
+		else
+		{
+			l = new ArrayList<V>();
+			synchronized (this)
+			{
+				for (V v : vertex)
+					if (v != null)
+						l.add(v);
+			}
+		}
+
+		return new AbstractList<Coord>()
+		{
+			public Coord get(int i)
+			{
+				return getCoord(l.get(i));
+			}
+
+			public int size()
+			{
+				return l.size();
+			}
+		};
+	}
+
+// Private data and classes.
+
+	private CoordArray c = null;
+	private int mapped = -1;
+	private Map<V,Integer> ids = new ConcurrentHashMap<V,Integer>();
+	private List<V> vertex = new ArrayList<V>();
+	private Map<V,View> views = new HashMap<V,View>();
+	private ReferenceQueue<Coord> dropped = new ReferenceQueue<Coord>();
+
+	private CSRGraph csr = null;
+	private long csrversion = -1;
+	private volatile long masks = 0;
+	private long csrmasks = 0;
+	private volatile long edits = 0;
+
+	// The ids of the vertices of a mapped graph, which are the vertices
+	// themselves, as a map for CSRGraph.make(), which only uses get().
+
+	private class MappedIds extends AbstractMap<Object,Integer>
+	{
+		public Integer get(Object v)
+		{
+			int i = indexOf(v);
+			return i < 0 ? null : i;
+		}
+
+		public Set<Map.Entry<Object,Integer>> entrySet()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	// Releases the ids of the vertices that are no longer in the graph.
+
+	private void release(Graph<V,E> g)
+	{
+		for (int i=0; i<vertex.size(); i++)
+		{
+			V u = vertex.get(i);
+			if (u == null || g.contains(u))
+				continue;
+
+			ids.remove(u);
+			views.remove(u);
+			vertex.set(i,null);
+			c.remove(i);
+		}
+	}
+
+	// A Coord handed out by getCoord() together with the values
+	// it was last given from the arrays, so that changes to it
+	// can be detected. The Coord is only weakly held, and the view
+	// is put on the queue once it has gone.
+
+	private class View extends WeakReference<Coord>
+	{
+		final V u;
+		int i = 0;
+		double x = 0;
+		double y = 0;
+		double x0 = 0;
+		double y0 = 0;
+		boolean m = true;
+		boolean h = true;
+		boolean v = true;
+
+		View(V v, int j, Coord q)
+		{
+			super(q,dropped);
+			u = v;
+			i = j;
+			mark();
+		}
+
+		void sync()
+		{
+			Coord p = get();
+			if (p == null)
+				return;
+
+			boolean e = false;
+			if (p.x != x || p.y != y)
+			{
+				c.set(i,p.x,p.y);
+				e = true;
+			}
+			if (p.x0 != x0 || p.y0 != y0)
+			{
+				c.setHome(i,p.x0,p.y0);
+				e = true;
+			}
+			if (p.m != m)
+			{
+				c.m.set(i,p.m);
+				e = true;
+			}
+			if (p.h != h)
+			{
+				c.h.set(i,p.h);
+				e = true;
+			}
+			if (p.v != v)
+			{
+				c.v.set(i,p.v);
+				e = true;
+			}
+			if (e)
+				edits++;
+			refresh();
+		}
+
+		void refresh()
+		{
+			Coord p = get();
+			if (p == null)
+				return;
+
+			c.copyTo(i,p);
+			mark();
+		}
+
+		void mark()
+		{
+			Coord p = get();
+			if (p == null)
+				return;
+
+			x = p.x;
+			y = p.y;
+			x0 = p.x0;
+			y0 = p.y0;
+			m = p.m;
+			h = p.h;
+			v = p.v;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package jpsgcs.alun.graph;
+
+import jpsgcs.alun.markov.Parameter;
+import jpsgcs.alun.util.QuadTree;
+import java.util.Collection;
+
+/**
+	A locator for large graphs in which every vertex repels every other
+	with an inverse square law, rather than only those within the
+	repulsion radius as in LocalLocator. The sum over all vertices is
+	approximated using a Barnes-Hut quadtree, so a sweep costs O(n log n).
+	The Theta parameter is the opening angle: cells of the tree that
+	subtend less than this angle at a vertex are treated as single masses.
+	Smaller values are more accurate but slower.
+*/
+
+public class BarnesHutLocator<V,E> extends GraphLocator<V,E>
+{
+	public BarnesHutLocator()
+	{
+		par = new Parameter[3];
+		par[0] = new Parameter("Repulsion",0,500,100);
+		par[1] = new Parameter("Theta",0,1.5,0.8);
+		par[2] = new Parameter("Gravity",0,10,0);
+	}
+
+	public double move(LocatedGraph<V,E> g)
+	{
+		if (g instanceof ArrayLocatedGraph)
+			return move((ArrayLocatedGraph<V,E>)g);
+
+		double delta = 0;
+		double d = par[0].getValue();
+		double k = d*d*d*d;
+		double theta = par[1].getValue();
+		double beta = par[2].getValue();
+
+		Collection<V> vertices = g.getVertices();
+		if (vertices == null)
+			return delta;
+
+		int n = vertices.size();
+		if (x.length < n)
+		{
+			x = new double[n];
+			y = new double[n];
+			c = new Coord[n];
+		}
+
+		int i = 0;
+		for (V a : vertices)
+		{
+			Coord pa = g.getCoord(a);
+			c[i] = pa;
+			x[i] = pa.x;
+			y[i] = pa.y;
+			i++;
+		}
+
+		if (k > Double.MIN_VALUE)
+			tree.build(x,y,n);
+
+		Derivatives D = deriv;
+
+		i = 0;
+		for (V a : vertices)
+		{
+			Coord pa = c[i];
+			if (pa.m)
+			{
+				D.clear();
+
+				if (k > Double.MIN_VALUE)
+				{
+					rep.set(D,pa.x,pa.y,k);
+					tree.visit(i,pa.x,pa.y,theta,rep);
+				}
+
+				squaredAttractions(D, g, pa, g.getNeighbours(a), 1);
+
+				if (beta > 0)
+					squaredAttraction(D, pa.x, pa.y, beta);
+
+				delta += update(pa,D);
+			}
+
+			c[i++] = null;
+		}
+
+		return delta;
+	}
+
+	public double move(ArrayLocatedGraph<V,E> g)
+	{
+		double delta = 0;
+		double d = par[0].getValue();
+		double k = d*d*d*d;
+		double theta = par[1].getValue();
+		double beta = par[2].getValue();
+
+		CSRGraph s = g.snapshot();
+		if (s == null)
+			return delta;
+
+		g.sync();
+		CoordArray c = g.coords();
+		double[] cx = c.x;
+		double[] cy = c.y;
+		int[] order = s.vertices;
+		int n = order.length;
+
+		if (x.length < n)
+		{
+			x = new double[n];
+			y = new double[n];
+		}
+
+		for (int j=0; j<n; j++)
+		{
+			x[j] = cx[order[j]];
+			y[j] = cy[order[j]];
+		}
+
+		if (k > Double.MIN_VALUE)
+			tree.build(x,y,n);
+
+		Derivatives D = deriv;
+
+		for (int j=0; j<n; j++)
+		{
+			int i = order[j];
+			if (!c.m.get(i))
+				continue;
+
+			D.clear();
+
+			if (k > Double.MIN_VALUE)
+			{
+				rep.set(D,cx[i],cy[i],k);
+				tree.visit(j,cx[i],cy[i],theta,rep);
+			}
+
+			for (int e=s.offset(i), f=s.offset(i+1); e<f; e++)
+			{
+				int b = s.target(e);
+				squaredAttraction(D, cx[i]-cx[b], cy[i]-cy[b], 1);
+			}
+
+			if (beta > 0)
+				squaredAttraction(D, cx[i], cy[i], beta);
+
+			delta += update(cx,cy,i,D);
+		}
+
+		g.sync();
+		return delta;
+	}
+
+// Private data and classes.
+
+	private QuadTree tree = new QuadTree();
+	private Repulsion rep = new Repulsion();
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private Coord[] c = new Coord[0];
+
+	private class Repulsion implements QuadTree.Visitor
+	{
+		Derivatives D = null;
+		double ax = 0;
+		double ay = 0;
+		double k = 0;
+
+		void set(Derivatives d, double x, double y, double s)
+		{
+			D = d;
+			ax = x;
+			ay = y;
+			k = s;
+		}
+
+		public void visit(double bx, double by, double mass)
+		{
+			inverseSquareRepulsion(D, ax-bx, ay-by, k*mass);
+		}
+	}
+}
@@ -0,0 +1,357 @@
+package jpsgcs.alun.graph;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+	An immutable snapshot of the structure of a graph in compressed
+	sparse row form. Vertices are refered to by integer ids, and the
+	neighbours of vertex i are targets[offsets[i]] to targets[offsets[i+1]-1].
+	For a directed graph the in and out neighbours are also kept separately,
+	and the plain neighbour lists hold their union. For an undirected graph
+	all three sets of arrays are the same. Self loops are left out.
+
+	Iterating over a snapshot makes no garbage and needs no hashing, so it
+	is used by the locators in place of the graph itself. It does not
+	change when the graph does; it should be made again when the graph's
+	version() changes.
+
+	The snapshot of a MappedGraph reads its rows straight from the mapped
+	file, and its offsets and targets arrays are null. Code that may be
+	given one, such as the locators, reads the rows through offset() and
+	target() and the in and out versions of these.
+*/
+
+public class CSRGraph
+{
+/**
+	The ids of the vertices in the snapshot, in the order that
+	they were given when it was made.
+*/
+	public final int[] vertices;
+
+	public final int[] offsets;
+	public final int[] targets;
+	public final int[] inOffsets;
+	public final int[] inTargets;
+	public final int[] outOffsets;
+	public final int[] outTargets;
+
+/**
+	Makes a snapshot of the graph in which the vertices have ids
+	0 to n-1 in the order they come from g.getVertices().
+*/
+	static public <V,E> CSRGraph make(Graph<V,E> g)
+	{
+		Collection<V> vertices = g.getVertices();
+		Map<V,Integer> index = new HashMap<V,Integer>();
+		for (V v : vertices)
+			index.put(v,index.size());
+		return make(g,vertices,index,index.size());
+	}
+
+/**
+	Makes a snapshot of the subgraph of g induced by the given vertices,
+	using the ids in the given map, which must all be less than n.
+	Neighbours of the vertices that are not in the collection are
+	left out. The collection and each neighbour collection are read
+	only once, so the rows agree with each other even if they are
+	read while the graph is changing.
+*/
+	static public <V,E> CSRGraph make(Graph<V,E> g, Collection<V> vertices, Map<?,Integer> index, int n)
+	{
+		List<V> vs = new ArrayList<V>(vertices);
+		vertices = vs;
+
+		int[] order = new int[vs.size()];
+		boolean[] in = new boolean[n];
+		int k = 0;
+		for (V v : vs)
+		{
+			int i = index.get(v);
+			order[k++] = i;
+			in[i] = true;
+		}
+
+		if (!g.isDirected())
+		{
+			int[][] a = rows(g,vertices,order,in,index,n,0);
+			return new CSRGraph(order,false,a[0],a[1],a[0],a[1],a[0],a[1]);
+		}
+
+		int[][] a = rows(g,vertices,order,in,index,n,0);
+		int[][] b = rows(g,vertices,order,in,index,n,1);
+		int[][] c = rows(g,vertices,order,in,index,n,2);
+		return new CSRGraph(order,true,a[0],a[1],b[0],b[1],c[0],c[1]);
+	}
+
+/**
+	Returns the graph made by merging the vertices of this one that have
+	the same value in map[], which must be from 0 to n-1 for each vertex.
+	The vertices of the new graph have ids 0 to n-1. It has an edge between
+	two of them if there is an edge between any of the vertices merged
+	into each.
+*/
+	public CSRGraph contract(int[] map, int n)
+	{
+		// Sort the vertices by the vertex they are merged into.
+
+		int[] first = new int[n+1];
+		for (int k=0; k<vertices.length; k++)
+			first[map[vertices[k]]+1]++;
+		for (int c=0; c<n; c++)
+			first[c+1] += first[c];
+
+		int[] members = new int[vertices.length];
+		int[] fill = Arrays.copyOf(first,n);
+		for (int k=0; k<vertices.length; k++)
+			members[fill[map[vertices[k]]]++] = vertices[k];
+
+		int[] order = new int[n];
+		for (int c=0; c<n; c++)
+			order[c] = c;
+
+		if (!directed)
+		{
+			int[][] a = contract(map,n,first,members,0);
+			return new CSRGraph(order,false,a[0],a[1],a[0],a[1],a[0],a[1]);
+		}
+
+		int[][] a = contract(map,n,first,members,0);
+		int[][] b = contract(map,n,first,members,1);
+		int[][] c = contract(map,n,first,members,2);
+		return new CSRGraph(order,true,a[0],a[1],b[0],b[1],c[0],c[1]);
+	}
+
+	public int size()
+	{
+		return vertices.length;
+	}
+
+	public boolean isDirected()
+	{
+		return directed;
+	}
+
+	public int degree(int i)
+	{
+		return offset(i+1) - offset(i);
+	}
+
+/**
+	Returns one more than the largest vertex id.
+*/
+	public int ids()
+	{
+		return offsets != null ? offsets.length-1 : ob.limit()-1;
+	}
+
+/**
+	Returns offsets[i], read from the file if this is the snapshot of a
+	MappedGraph.
+*/
+	public int offset(int i)
+	{
+		return offsets != null ? offsets[i] : ob.get(i);
+	}
+
+/**
+	Returns targets[e], read from the file if this is the snapshot of a
+	MappedGraph.
+*/
+	public int target(int e)
+	{
+		return targets != null ? targets[e] : tb.get(e);
+	}
+
+	public int inOffset(int i)
+	{
+		return inOffsets != null ? inOffsets[i] : iob.get(i);
+	}
+
+	public int inTarget(int e)
+	{
+		return inTargets != null ? inTargets[e] : itb.get(e);
+	}
+
+	public int outOffset(int i)
+	{
+		return outOffsets != null ? outOffsets[i] : oob.get(i);
+	}
+
+	public int outTarget(int e)
+	{
+		return outTargets != null ? outTargets[e] : otb.get(e);
+	}
+
+// Private data and methods.
+
+	private boolean directed = false;
+	private IntBuffer ob = null;
+	private IntBuffer tb = null;
+	private IntBuffer iob = null;
+	private IntBuffer itb = null;
+	private IntBuffer oob = null;
+	private IntBuffer otb = null;
+
+	CSRGraph(int[] v, boolean d, int[] o, int[] t, int[] io, int[] it, int[] oo, int[] ot)
+	{
+		vertices = v;
+		directed = d;
+		offsets = o;
+		targets = t;
+		inOffsets = io;
+		inTargets = it;
+		outOffsets = oo;
+		outTargets = ot;
+	}
+
+	// Makes a snapshot whose rows are read from the given buffers,
+	// which must not change.
+
+	CSRGraph(int[] v, boolean d, IntBuffer o, IntBuffer t, IntBuffer io, IntBuffer it, IntBuffer oo, IntBuffer ot)
+	{
+		vertices = v;
+		directed = d;
+		offsets = targets = inOffsets = inTargets = outOffsets = outTargets = null;
+		ob = o;
+		tb = t;
+		iob = io;
+		itb = it;
+		oob = oo;
+		otb = ot;
+	}
+
+	// Makes the offsets and targets arrays for the in (1), out (2), or
+	// all (0) neighbours. Each row is collected in turn, then the rows
+	// are put in id order. The mark array is used to avoid counting a
+	// vertex twice when it is both an in and an out neighbour. A row has
+	// no more than n entries, so it is collected in an array of size n.
+
+	static private <V,E> int[][] rows(Graph<V,E> g, Collection<V> vertices, int[] order, boolean[] in, Map<?,Integer> index, int n, int which)
+	{
+		int[] off = new int[n+1];
+		int[] at = new int[n];
+		int[] mark = new int[n];
+		int[] row = new int[n];
+		int[] buf = new int[Math.max(16,2*order.length)];
+		int used = 0;
+
+		int k = 0;
+		for (V v : vertices)
+		{
+			int i = order[k++];
+			int d = visit(g,v,i,which,in,index,mark,k,row,0);
+			if (used + d > buf.length)
+				buf = Arrays.copyOf(buf,Math.max(2*buf.length,used+d));
+			System.arraycopy(row,0,buf,used,d);
+			at[i] = used;
+			off[i+1] = d;
+			used += d;
+		}
+
+		for (int i=0; i<n; i++)
+			off[i+1] += off[i];
+
+		int[] t = new int[used];
+		for (int i=0; i<n; i++)
+			System.arraycopy(buf,at[i],t,off[i],off[i+1]-off[i]);
+
+		int[][] r = {off, t};
+		return r;
+	}
+
+	// Makes the rows of the contracted graph from the in (1), out (2),
+	// or all (0) rows of this one, in two passes, counting and then
+	// filling.
+
+	private int[][] contract(int[] map, int n, int[] first, int[] members, int which)
+	{
+		int[] o = new int[n+1];
+		int[] mark = new int[n];
+		Arrays.fill(mark,-1);
+
+		for (int c=0; c<n; c++)
+			for (int k=first[c]; k<first[c+1]; k++)
+			{
+				int i = members[k];
+				for (int e=start(which,i), f=start(which,i+1); e<f; e++)
+				{
+					int d = map[end(which,e)];
+					if (d != c && mark[d] != c)
+					{
+						mark[d] = c;
+						o[c+1]++;
+					}
+				}
+			}
+
+		for (int c=0; c<n; c++)
+			o[c+1] += o[c];
+
+		int[] t = new int[o[n]];
+		Arrays.fill(mark,-1);
+
+		for (int c=0; c<n; c++)
+		{
+			int pos = o[c];
+			for (int k=first[c]; k<first[c+1]; k++)
+			{
+				int i = members[k];
+				for (int e=start(which,i), f=start(which,i+1); e<f; e++)
+				{
+					int d = map[end(which,e)];
+					if (d != c && mark[d] != c)
+					{
+						mark[d] = c;
+						t[pos++] = d;
+					}
+				}
+			}
+		}
+
+		int[][] r = {o, t};
+		return r;
+	}
+
+	private int start(int which, int i)
+	{
+		return which == 1 ? inOffset(i) : which == 2 ? outOffset(i) : offset(i);
+	}
+
+	private int end(int which, int e)
+	{
+		return which == 1 ? inTarget(e) : which == 2 ? outTarget(e) : target(e);
+	}
+
+	static private <V,E> int visit(Graph<V,E> g, V v, int i, int which, boolean[] in, Map<?,Integer> index, int[] mark, int stamp, int[] t, int pos)
+	{
+		int start = pos;
+		if (which != 1)
+			pos = add(g.outNeighbours(v),i,in,index,mark,stamp,t,pos);
+		if (which != 2 && g.isDirected())
+			pos = add(g.inNeighbours(v),i,in,index,mark,stamp,t,pos);
+		return pos - start;
+	}
+
+	static private <V> int add(Collection<V> c, int i, boolean[] in, Map<?,Integer> index, int[] mark, int stamp, int[] t, int pos)
+	{
+		if (c == null)
+			return pos;
+
+		for (V u : c)
+		{
+			Integer j = index.get(u);
+			if (j == null || j == i || j >= in.length || !in[j] || mark[j] == stamp)
+				continue;
+			mark[j] = stamp;
+			t[pos++] = j;
+		}
+		return pos;
+	}
+}
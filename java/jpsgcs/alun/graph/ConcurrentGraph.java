@@ -0,0 +1,16 @@
+package jpsgcs.alun.graph;
+
+/**
+	A graph that can be changed by one thread while others read it,
+	and that can give a copy of itself that will not change, so that
+	a reader can work on one consistent version of it throughout.
+*/
+
+public interface ConcurrentGraph<V,E> extends VersionedGraph<V,E>
+{
+/**
+	Returns an immutable copy of the graph as it is now. 
+	The copy must not be changed.
+*/
+	public VersionedGraph<V,E> snapshot();
+}
@@ -0,0 +1,252 @@
+package jpsgcs.alun.graph;
+
+import java.util.Collection;
+
+/**
+	An IntNetwork that can be changed by one thread while others read it,
+	in the same way as a ConcurrentNetwork.
+
+	Changes are made while holding the lock on this object. snapshot()
+	returns a read only copy of the graph as it is then, kept until the
+	next change. The copy is made without copying the graph: it shares
+	the rows of the vertices, and a change made afterwards copies just
+	the rows it touches, and the chunks of the table that hold them,
+	before changing them. Adding an edge to the end of a shared
+	neighbour list does not even copy the list. So a snapshot for every
+	sweep costs little more than the changes made between sweeps, and
+	a writer is never held up by a reader. A sweep over the graph should
+	take one snapshot and work on it throughout.
+
+	Queries that return collections are answered from a snapshot. The
+	others read the current graph under the lock.
+*/
+
+public class ConcurrentIntNetwork extends IntNetwork implements ConcurrentGraph<Integer,Object>
+{
+	public ConcurrentIntNetwork()
+	{
+		this(false);
+	}
+
+	public ConcurrentIntNetwork(boolean directed)
+	{
+		super(directed);
+	}
+
+/**
+	Returns a read only copy of the graph as it is now. The same copy is
+	returned until the graph next changes.
+*/
+	public IntNetwork snapshot()
+	{
+		Frozen s = frozen;
+		if (s != null && s.version == version())
+			return s.graph;
+
+		synchronized (this)
+		{
+			s = frozen;
+			if (s != null && s.version == version())
+				return s.graph;
+
+			IntNetwork g = freeze();
+			frozen = new Frozen(g,version());
+			return g;
+		}
+	}
+
+// Queries answered from a snapshot.
+
+	public Collection<Integer> getVertices()
+	{
+		return snapshot().getVertices();
+	}
+
+	public Collection<Integer> getNeighbours(Object x)
+	{
+		return snapshot().getNeighbours(x);
+	}
+
+	public Collection<Integer> outNeighbours(Object x)
+	{
+		return snapshot().outNeighbours(x);
+	}
+
+	public Collection<Integer> inNeighbours(Object x)
+	{
+		return snapshot().inNeighbours(x);
+	}
+
+	public Collection<Object> connections(Object x)
+	{
+		return snapshot().connections(x);
+	}
+
+	public String toString()
+	{
+		return snapshot().toString();
+	}
+
+// Queries answered from the current graph.
+
+	synchronized public int size()
+	{
+		return super.size();
+	}
+
+	synchronized public boolean contains(int x)
+	{
+		return super.contains(x);
+	}
+
+	synchronized public boolean connects(int x, int y)
+	{
+		return super.connects(x,y);
+	}
+
+	synchronized public int[] vertices()
+	{
+		return super.vertices();
+	}
+
+	synchronized public int[] neighbours(int x)
+	{
+		return super.neighbours(x);
+	}
+
+	synchronized public int[] outNeighbours(int x)
+	{
+		return super.outNeighbours(x);
+	}
+
+	synchronized public int[] inNeighbours(int x)
+	{
+		return super.inNeighbours(x);
+	}
+
+	synchronized public int outDegree(int x)
+	{
+		return super.outDegree(x);
+	}
+
+	synchronized public int inDegree(int x)
+	{
+		return super.inDegree(x);
+	}
+
+	synchronized public boolean contains(Object x)
+	{
+		return super.contains(x);
+	}
+
+	synchronized public boolean connects(Object x, Object y)
+	{
+		return super.connects(x,y);
+	}
+
+	synchronized public Object connection(Object x, Object y)
+	{
+		return super.connection(x,y);
+	}
+
+// Changes.
+
+	synchronized public void reserve(int m)
+	{
+		super.reserve(m);
+	}
+
+	synchronized public boolean add(int x)
+	{
+		return super.add(x);
+	}
+
+	synchronized public boolean add(int x, int d)
+	{
+		return super.add(x,d);
+	}
+
+	synchronized public boolean remove(int x)
+	{
+		return super.remove(x);
+	}
+
+	synchronized public boolean connect(int x, int y)
+	{
+		return super.connect(x,y);
+	}
+
+	synchronized public int connect(int[] x, int[] y, int m)
+	{
+		return super.connect(x,y,m);
+	}
+
+	synchronized public boolean disconnect(int x, int y)
+	{
+		return super.disconnect(x,y);
+	}
+
+	synchronized public boolean disconnect(int x)
+	{
+		return super.disconnect(x);
+	}
+
+	synchronized public void clear()
+	{
+		super.clear();
+	}
+
+	synchronized public void clearEdges()
+	{
+		super.clearEdges();
+	}
+
+	synchronized public boolean add(Integer x)
+	{
+		return super.add(x);
+	}
+
+	synchronized public boolean remove(Object x)
+	{
+		return super.remove(x);
+	}
+
+	synchronized public boolean connect(Integer x, Integer y)
+	{
+		return super.connect(x,y);
+	}
+
+	synchronized public boolean connect(Integer x, Integer y, Object e)
+	{
+		return super.connect(x,y,e);
+	}
+
+	synchronized public boolean disconnect(Object x, Object y)
+	{
+		return super.disconnect(x,y);
+	}
+
+	synchronized public boolean disconnect(Object x)
+	{
+		return super.disconnect(x);
+	}
+
+// Private data and classes.
+
+	private volatile Frozen frozen = null;
+
+	// A copy of the graph and the version it was made from, kept
+	// together so that a reader gets both from one volatile read.
+
+	private static class Frozen
+	{
+		Frozen(IntNetwork g, long v)
+		{
+			graph = g;
+			version = v;
+		}
+
+		final IntNetwork graph;
+		final long version;
+	}
+}
@@ -0,0 +1,579 @@
+package jpsgcs.alun.graph;
+
+import jpsgcs.alun.hashing.LinkedIdentityHashMap;
+
+import java.util.Set;
+import java.util.Map;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+	A graph that can be changed by one thread while others read it.
+	It behaves as a Network, allowing one connection between any pair
+	of vertices, with an optional object on each, and either all
+	directed or all undirected edges.
+
+	Each vertex has a row, holding the maps to its neighbours, kept by
+	slot in a RowTable. snapshot() returns a read only copy of the graph
+	as it is then, kept until the next change. The copy is made without
+	copying the graph: it shares the rows, and a change made afterwards
+	copies just the rows it touches, and the chunks of the table that
+	hold them, before changing them. So a snapshot for every sweep
+	costs about as much as the changes made between sweeps, and a writer
+	is never held up by a reader for longer than it takes to hand over
+	the snapshot. A layout sweep or a repaint should take one snapshot
+	and work on it throughout, so that it sees one consistent version
+	of the graph.
+
+	Changes are made while holding the lock on this object, as are the
+	queries that return a single answer. Those that return collections,
+	such as getVertices() and getNeighbours(), are answered from a
+	snapshot, so they can be iterated safely, but two such calls can
+	see different versions of the graph.
+
+	As with Network, vertices come out in the order they were added.
+*/
+
+public class ConcurrentNetwork<V,E> implements MutableGraph<V,E>, ConcurrentGraph<V,E>
+{
+	public ConcurrentNetwork()
+	{
+		this(false,false);
+	}
+
+	public ConcurrentNetwork(boolean directed)
+	{
+		this(directed,false);
+	}
+
+	public ConcurrentNetwork(boolean directed, boolean identity)
+	{
+		this.directed = directed;
+		this.identity = identity;
+		rows = new RowTable<Row<V,E>>(16,hasher());
+	}
+
+/**
+	Returns a read only copy of the graph as it is now. The same copy is
+	returned until the graph next changes.
+*/
+	public VersionedGraph<V,E> snapshot()
+	{
+		return view();
+	}
+
+	public boolean isDirected()
+	{
+		return directed;
+	}
+
+	public boolean isIdentity()
+	{
+		return identity;
+	}
+
+	public long version()
+	{
+		return version;
+	}
+
+// Queries answered from a snapshot.
+
+	public Set<V> getVertices()
+	{
+		return view().vertices;
+	}
+
+	public Set<V> getNeighbours(Object x)
+	{
+		Row<V,E> r = view().row(x);
+		if (r == null)
+			return null;
+		if (!directed)
+			return Collections.unmodifiableSet(r.out.keySet());
+
+		Set<V> n = new LinkedHashSet<V>(r.in.keySet());
+		n.addAll(r.out.keySet());
+		return Collections.unmodifiableSet(n);
+	}
+
+	public Set<V> outNeighbours(Object x)
+	{
+		Row<V,E> r = view().row(x);
+		return r == null ? null : Collections.unmodifiableSet(r.out.keySet());
+	}
+
+	public Set<V> inNeighbours(Object x)
+	{
+		Row<V,E> r = view().row(x);
+		return r == null ? null : Collections.unmodifiableSet(r.in.keySet());
+	}
+
+	public Collection<E> connections(Object x)
+	{
+		Row<V,E> r = view().row(x);
+		return r == null ? null : Collections.unmodifiableCollection(r.out.values());
+	}
+
+	public Map<V,E> neighbourMap(Object x)
+	{
+		Row<V,E> r = view().row(x);
+		return r == null ? null : Collections.unmodifiableMap(r.out);
+	}
+
+	public String toString()
+	{
+		ConcurrentNetwork<V,E> g = view();
+		StringBuffer s = new StringBuffer();
+
+		for (V v : g.vertices)
+		{
+			s.append(v+"\t");
+			for (V u : g.row(v).out.keySet())
+				s.append(u+" ");
+			s.append("\n");
+		}
+
+		if (s.length() > 0)
+			s.deleteCharAt(s.length()-1);
+
+		return s.toString();
+	}
+
+// Queries answered from the current graph.
+
+	synchronized public boolean contains(Object x)
+	{
+		return row(x) != null;
+	}
+
+	synchronized public boolean connects(Object x, Object y)
+	{
+		Row<V,E> r = row(x);
+		return r != null && r.out.containsKey(y);
+	}
+
+	synchronized public E connection(Object x, Object y)
+	{
+		Row<V,E> r = row(x);
+		return r == null ? null : r.out.get(y);
+	}
+
+// Changes.
+
+	synchronized public void clear()
+	{
+		check();
+		rows = new RowTable<Row<V,E>>(16,hasher());
+		live = 0;
+		version++;
+	}
+
+	synchronized public void clearEdges()
+	{
+		check();
+		for (int s=0; s<rows.size(); s++)
+		{
+			Row<V,E> r = rows.get(s);
+			if (r != null)
+				rows.set(s,new Row<V,E>(r.v,0,directed,identity));
+		}
+		version++;
+	}
+
+/**
+	Makes room for n more vertices.
+*/
+	synchronized public void reserve(int n)
+	{
+		check();
+		rows.reserve(n);
+	}
+
+	synchronized public boolean add(V x)
+	{
+		return add(x,0);
+	}
+
+/**
+	Adds the vertex, if it is not already there, with room for n neighbours.
+*/
+	synchronized public boolean add(V x, int n)
+	{
+		check();
+		if (slot(x) >= 0)
+			return false;
+
+		int s = rows.size();
+		rows.set(s,new Row<V,E>(x,n,directed,identity));
+		rows.file(hash(x),s);
+		live++;
+
+		version++;
+		return true;
+	}
+
+/**
+	Connects x[i] to y[i] for i from 0 to n-1, adding any vertices
+	that are not already in the graph, and returns the number of new
+	edges. This does the same as calling connect() for each pair, but
+	changes the version only once.
+*/
+	synchronized public int connect(V[] x, V[] y, int n)
+	{
+		check();
+		int k = 0;
+		for (int i=0; i<n; i++)
+		{
+			add(x[i]);
+			add(y[i]);
+			int sx = slot(x[i]);
+			int sy = slot(y[i]);
+
+			if (rows.get(sx).out.containsKey(y[i]))
+				continue;
+
+			rows.edit(sx).out.put(y[i],null);
+			rows.edit(sy).in.put(x[i],null);
+			k++;
+		}
+
+		if (k > 0)
+			version++;
+		return k;
+	}
+
+	synchronized public boolean remove(Object x)
+	{
+		check();
+		int s = slot(x);
+		if (s < 0)
+			return false;
+
+		cut(s);
+		rows.set(s,null);
+		live--;
+
+		int n = rows.size();
+		if (n - live > 1024 && n - live > live)
+			compact();
+
+		version++;
+		return true;
+	}
+
+/**
+	Removes all the edges to and from x.
+*/
+	synchronized public boolean disconnect(Object x)
+	{
+		check();
+		int s = slot(x);
+		if (s < 0)
+			return false;
+
+		cut(s);
+		rows.set(s,new Row<V,E>(rows.get(s).v,0,directed,identity));
+
+		version++;
+		return true;
+	}
+
+	synchronized public boolean disconnect(Object x, Object y)
+	{
+		check();
+		int sx = slot(x);
+		int sy = slot(y);
+		if (sx < 0 || sy < 0 || !rows.get(sx).out.containsKey(y))
+			return false;
+
+		rows.edit(sx).out.remove(y);
+		rows.edit(sy).in.remove(x);
+
+		version++;
+		return true;
+	}
+
+	synchronized public boolean connect(V x, V y)
+	{
+		if (connects(x,y))
+			return false;
+
+		return join(x,y,null);
+	}
+
+	synchronized public boolean connect(V x, V y, E e)
+	{
+		if (connection(x,y) != null && connection(x,y) == e)
+			return false;
+
+		return join(x,y,e);
+	}
+
+// Private data and methods.
+
+	private boolean directed = false;
+	private boolean identity = false;
+	private boolean frozen = false;
+	private volatile long version = 0;
+
+	// Slots 0 to rows.size()-1 have been used, live of them by vertices
+	// that are still in the graph.
+
+	private RowTable<Row<V,E>> rows = null;
+	private int live = 0;
+
+	private volatile Frozen<V,E> snap = null;
+
+	// A read only copy of g that shares its rows.
+
+	private ConcurrentNetwork(ConcurrentNetwork<V,E> g, RowTable<Row<V,E>> t)
+	{
+		directed = g.directed;
+		identity = g.identity;
+		frozen = true;
+		version = g.version;
+		rows = t;
+		live = g.live;
+	}
+
+	// The row of a vertex, and the maps to its neighbours. For an
+	// undirected graph in and out are the same map.
+
+	private static class Row<V,E> extends RowTable.Row
+	{
+		Row(V v, int n, boolean directed, boolean identity)
+		{
+			this.v = v;
+			this.identity = identity;
+			out = map(n);
+			in = directed ? map(n) : out;
+		}
+
+		RowTable.Row copy()
+		{
+			Row<V,E> r = new Row<V,E>(v,0,false,identity);
+			r.out = map(out.size());
+			r.out.putAll(out);
+			if (in == out)
+			{
+				r.in = r.out;
+			}
+			else
+			{
+				r.in = map(in.size());
+				r.in.putAll(in);
+			}
+			return r;
+		}
+
+		private Map<V,E> map(int n)
+		{
+			if (identity)
+				return n > 0 ? new LinkedIdentityHashMap<V,E>(3*n) : new LinkedIdentityHashMap<V,E>();
+			return n > 0 ? new LinkedHashMap<V,E>(Math.max(16,(int)(n/0.75f)+1)) : new LinkedHashMap<V,E>();
+		}
+
+		final V v;
+		final boolean identity;
+		Map<V,E> out = null;
+		Map<V,E> in = null;
+	}
+
+	// A copy of the graph and the version it was made from, kept
+	// together so that a reader gets both from one volatile read.
+
+	private static class Frozen<V,E>
+	{
+		Frozen(ConcurrentNetwork<V,E> g, long v)
+		{
+			graph = g;
+			version = v;
+		}
+
+		final ConcurrentNetwork<V,E> graph;
+		final long version;
+	}
+
+	// The read only copy for the current version, made if need be.
+
+	private ConcurrentNetwork<V,E> view()
+	{
+		if (frozen)
+			return this;
+
+		Frozen<V,E> s = snap;
+		if (s != null && s.version == version)
+			return s.graph;
+
+		synchronized (this)
+		{
+			s = snap;
+			if (s != null && s.version == version)
+				return s.graph;
+
+			ConcurrentNetwork<V,E> g = new ConcurrentNetwork<V,E>(this,rows.freeze());
+			snap = new Frozen<V,E>(g,version);
+			return g;
+		}
+	}
+
+	// The vertices of a read only copy.
+
+	private final Set<V> vertices = new AbstractSet<V>()
+	{
+		public int size()
+		{
+			return live;
+		}
+
+		public boolean contains(Object x)
+		{
+			return row(x) != null;
+		}
+
+		public Iterator<V> iterator()
+		{
+			return new Iterator<V>()
+			{
+				int s = next(0);
+
+				int next(int t)
+				{
+					while (t < rows.size() && rows.get(t) == null)
+						t++;
+					return t;
+				}
+
+				public boolean hasNext()
+				{
+					return s < rows.size();
+				}
+
+				public V next()
+				{
+					if (s >= rows.size())
+						throw new NoSuchElementException();
+					V v = rows.get(s).v;
+					s = next(s+1);
+					return v;
+				}
+
+				public void remove()
+				{
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	};
+
+	private void check()
+	{
+		if (frozen)
+			throw new UnsupportedOperationException("This copy of the graph is read only.");
+	}
+
+	private boolean join(V x, V y, E e)
+	{
+		check();
+		add(x);
+		add(y);
+		rows.edit(slot(x)).out.put(y,e);
+		rows.edit(slot(y)).in.put(x,e);
+
+		version++;
+		return true;
+	}
+
+	// Removes the edges between slot s and the other vertices. The row
+	// in slot s is left as it is, to be replaced by the caller.
+
+	private void cut(int s)
+	{
+		Row<V,E> r = rows.get(s);
+		V x = r.v;
+
+		for (V y : r.out.keySet())
+		{
+			int t = slot(y);
+			if (t != s)
+				rows.edit(t).in.remove(x);
+		}
+
+		if (directed)
+		{
+			for (V y : r.in.keySet())
+			{
+				int t = slot(y);
+				if (t != s)
+					rows.edit(t).out.remove(x);
+			}
+		}
+	}
+
+	// Moves the live rows down to fill the gaps left by removed vertices.
+
+	private void compact()
+	{
+		RowTable<Row<V,E>> t = rows.renew(live);
+		int k = 0;
+		for (int s=0; s<rows.size(); s++)
+		{
+			Row<V,E> r = rows.get(s);
+			if (r == null)
+				continue;
+			t.move(k,r);
+			t.file(hash(r.v),k);
+			k++;
+		}
+		rows = t;
+	}
+
+	// The slot of a vertex. A cell whose slot no longer holds the vertex
+	// is passed over, so that vertices that were removed, or that were
+	// added after a read only copy was made, are not found.
+
+	private Row<V,E> row(Object x)
+	{
+		return rows.get(slot(x));
+	}
+
+	private int slot(Object x)
+	{
+		if (x == null)
+			return -1;
+
+		int h = hash(x);
+		for (int c = rows.find(h); c >= 0; c = rows.findNext(c,h))
+		{
+			int s = rows.slotAt(c);
+			Row<V,E> r = rows.get(s);
+			if (r != null && (identity ? r.v == x : r.v.equals(x)))
+				return s;
+		}
+		return -1;
+	}
+
+	private int hash(Object x)
+	{
+		int h = identity ? System.identityHashCode(x) : x.hashCode();
+		h *= 0x9E3779B1;
+		return h ^ (h >>> 16);
+	}
+
+	private RowTable.Hasher<Row<V,E>> hasher()
+	{
+		return new RowTable.Hasher<Row<V,E>>()
+		{
+			public int hash(Row<V,E> r)
+			{
+				return ConcurrentNetwork.this.hash(r.v);
+			}
+		};
+	}
+}
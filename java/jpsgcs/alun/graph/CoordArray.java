@@ -0,0 +1,158 @@
+package jpsgcs.alun.graph;
+
+import java.util.BitSet;
+import java.util.Arrays;
+
+/**
+	Stores the same information as a collection of Coord objects,
+	but in parallel primitive arrays indexed by a dense integer id.
+	The moveable, homing and visible flags are kept in bit sets.
+	The arrays are replaced when the store grows, so code that
+	holds on to them across calls to add() should get them again.
+	The indexes of points that are removed are given out again
+	by later calls to add().
+*/
+
+public class CoordArray
+{
+	public double[] x = null;
+	public double[] y = null;
+	public double[] x0 = null;
+	public double[] y0 = null;
+	public final BitSet m = new BitSet();
+	public final BitSet h = new BitSet();
+	public final BitSet v = new BitSet();
+
+	public CoordArray()
+	{
+		this(16);
+	}
+
+	public CoordArray(int cap)
+	{
+		cap = Math.max(cap,1);
+		x = new double[cap];
+		y = new double[cap];
+		x0 = new double[cap];
+		y0 = new double[cap];
+	}
+
+/**
+	Adds a new point at (a,b) that is moveable, homing and visible,
+	and returns its index. The index of a removed point is used if
+	there is one.
+*/
+	synchronized public int add(double a, double b)
+	{
+		int i = 0;
+		if (nfree > 0)
+		{
+			i = free[--nfree];
+		}
+		else
+		{
+			if (n == x.length)
+				ensureCapacity(2*n);
+			i = n++;
+		}
+
+		x[i] = a;
+		y[i] = b;
+		x0[i] = 0;
+		y0[i] = 0;
+		m.set(i);
+		h.set(i);
+		v.set(i);
+
+		return i;
+	}
+
+/**
+	Removes the point with the given index, which must not be removed
+	again until it has been given out by add(). The point is made
+	invisible and not moveable until then.
+*/
+	synchronized public void remove(int i)
+	{
+		m.clear(i);
+		h.clear(i);
+		v.clear(i);
+
+		if (nfree == free.length)
+			free = Arrays.copyOf(free,Math.max(16,2*nfree));
+		free[nfree++] = i;
+	}
+
+	synchronized public void ensureCapacity(int cap)
+	{
+		if (cap <= x.length)
+			return;
+
+		x = grow(x,cap);
+		y = grow(y,cap);
+		x0 = grow(x0,cap);
+		y0 = grow(y0,cap);
+	}
+
+/**
+	Returns one more than the largest index given out, including
+	the indexes of removed points.
+*/
+	public int size()
+	{
+		return n;
+	}
+
+	public void set(int i, double a, double b)
+	{
+		x[i] = a;
+		y[i] = b;
+	}
+
+	public void set(int i, double a, double b, boolean move)
+	{
+		set(i,a,b);
+		m.set(i,move);
+	}
+
+	public void setHome(int i, double a, double b)
+	{
+		x0[i] = a;
+		y0[i] = b;
+	}
+
+	public void copyTo(int i, Coord c)
+	{
+		c.x = x[i];
+		c.y = y[i];
+		c.x0 = x0[i];
+		c.y0 = y0[i];
+		c.m = m.get(i);
+		c.h = h.get(i);
+		c.v = v.get(i);
+	}
+
+	public void copyFrom(int i, Coord c)
+	{
+		x[i] = c.x;
+		y[i] = c.y;
+		x0[i] = c.x0;
+		y0[i] = c.y0;
+		m.set(i,c.m);
+		h.set(i,c.h);
+		v.set(i,c.v);
+	}
+
+// Private data and methods.
+
+	private int n = 0;
+	private int[] free = new int[0];
+	private int nfree = 0;
+
+	private double[] grow(double[] a, int cap)
+	{
+		double[] b = new double[cap];
+		System.arraycopy(a,0,b,0,n);
+		return b;
+	}
+}
@@ -1,9 +1,9 @@
 package jpsgcs.alun.graph;
 
 import jpsgcs.alun.markov.Parameter;
-import jpsgcs.alun.util.RadixPlaneSorter;
+import jpsgcs.alun.util.UniformGrid;
+import jpsgcs.alun.util.IntArray;
 import java.util.Collection;
-import java.util.LinkedHashSet;
 
 public class DAGLocator<V,E> extends GraphLocator<V,E>
 {
@@ -17,6 +17,9 @@ public class DAGLocator<V,E> extends GraphLocator<V,E>
 
 	public double move(LocatedGraph<V,E> g)
 	{
+		if (g instanceof ArrayLocatedGraph)
+			return move((ArrayLocatedGraph<V,E>)g);
+
 		double differ = 0;
 		double d = par[0].getValue();
 		double gamma = d*d;
@@ -31,42 +34,118 @@ public class DAGLocator<V,E> extends GraphLocator<V,E>
 		if (vertices == null)
 			return differ;
 
-		RadixPlaneSorter<Coord> p = null;
+		int n = gather(g,vertices);
+
+		UniformGrid p = null;
 		if (alpha > Double.MIN_VALUE)
 		{
-			p = new RadixPlaneSorter<Coord>(Math.sqrt(gamma),Math.sqrt(gamma),40);
-			for (V a : vertices)
-				p.add(g.getCoord(a));
-		}	
+			p = grid;
+			p.build(n,ptx,pty,Math.sqrt(gamma));
+		}
 			
+		Derivatives D = deriv;
+			
+		int k = 0;
 		for (V a : vertices)
 		{
-			Coord pa = g.getCoord(a);
+			int i = k++;
+			Coord pa = pts[i];
 			if (!pa.m)
 				continue;
 
-			Derivatives D = new Derivatives();
+			D.clear();
 			
-			addDerivatives(D, squaredAttractions(pa, g.getCoords(g.getNeighbours(a))), 1);
+			squaredAttractions(D, g, pa, g.getNeighbours(a), 1);
 
 			if (p != null)
 			{
-				p.remove(pa);
-				addDerivatives(D, localRepulsions(pa, p.getLocal(pa,Math.sqrt(gamma)), gamma), alpha);
+				p.remove(i);
+				p.getLocal(pa.x,pa.y,Math.sqrt(gamma),ptx,pty,local);
+				for (int j=0; j<local.size(); j++)
+				{
+					Coord pb = pts[local.get(j)];
+					localRepulsion(D, pa.x-pb.x, pa.y-pb.y, gamma, alpha);
+				}
 			}
 
 			if (beta > 0)
 			{
-				addDerivatives(D, verticalGenerations(pa, g.getCoords(g.outNeighbours(a)), delta), beta);
-				addDerivatives(D, verticalGenerations(pa, g.getCoords(g.inNeighbours(a)), -delta), beta);
+				verticalGenerations(D, g, pa, g.outNeighbours(a), delta, beta);
+				verticalGenerations(D, g, pa, g.inNeighbours(a), -delta, beta);
 			}
 
 			differ += update(pa,D);
 
 			if (p != null)
-				p.add(pa);
+			{
+				ptx[i] = pa.x;
+				pty[i] = pa.y;
+				p.add(i,pa.x,pa.y);
+			}
 		}
 
+		release(n);
 		return differ;
         }
+
+	public double move(ArrayLocatedGraph<V,E> g)
+	{
+		return isParallel() ? parallelSweep(g) : sweep(g);
+	}
+
+	protected boolean hasForces()
+	{
+		return true;
+	}
+
+	protected void prepare()
+	{
+		double d = par[0].getValue();
+		gamma = d*d;
+		alpha = d < Double.MIN_VALUE ? 0 : 1/3.0;
+		d = par[1].getValue();
+		beta = d*d*d;
+		delta = par[2].getValue();
+		r = Math.sqrt(gamma);
+	}
+
+	protected double radius()
+	{
+		return alpha > Double.MIN_VALUE ? r : 0;
+	}
+
+	protected void forces(Derivatives D, int i, double[] x, double[] y, CSRGraph s, UniformGrid p, IntArray l)
+	{
+		for (int e=s.offset(i), f=s.offset(i+1); e<f; e++)
+		{
+			int b = s.target(e);
+			squaredAttraction(D, x[i]-x[b], y[i]-y[b], 1);
+		}
+
+		if (p != null)
+		{
+			p.getLocal(x[i],y[i],r,x,y,l);
+			for (int j=0; j<l.size(); j++)
+			{
+				int b = l.get(j);
+				localRepulsion(D, x[i]-x[b], y[i]-y[b], gamma, alpha);
+			}
+		}
+
+		if (beta > 0)
+		{
+			for (int e=s.outOffset(i), f=s.outOffset(i+1); e<f; e++)
+				verticalGeneration(D, y[i]-y[s.outTarget(e)], delta, beta);
+			for (int e=s.inOffset(i), f=s.inOffset(i+1); e<f; e++)
+				verticalGeneration(D, y[i]-y[s.inTarget(e)], -delta, beta);
+		}
+	}
+
+// Private data.
+
+	private double gamma = 0;
+	private double alpha = 0;
+	private double beta = 0;
+	private double delta = 0;
+	private double r = 0;
 }
@@ -6,4 +6,12 @@ public class Derivatives
 	double dy = 0;
 	double d2x = 0;
 	double d2y = 0;
+
+	void clear()
+	{
+		dx = 0;
+		dy = 0;
+		d2x = 0;
+		d2y = 0;
+	}
 }
@@ -0,0 +1,50 @@
+package jpsgcs.alun.graph;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+	A fork/join task that runs a body for each index in a range, halving
+	the range until it has at most grain indexes, so that idle threads
+	can steal the other halves.
+*/
+
+class ForEach extends RecursiveAction
+{
+/**
+	The work to be done for one index. It may be run from any thread
+	in the pool.
+*/
+	interface Body
+	{
+		public void run(int i);
+	}
+
+	ForEach(Body b, int lo, int hi, int grain)
+	{
+		this.b = b;
+		this.lo = lo;
+		this.hi = hi;
+		this.grain = Math.max(1,grain);
+	}
+
+	protected void compute()
+	{
+		if (hi - lo <= grain)
+		{
+			for (int i=lo; i<hi; i++)
+				b.run(i);
+			return;
+		}
+
+		int mid = (lo + hi) >>> 1;
+		invokeAll(new ForEach(b,lo,mid,grain), new ForEach(b,mid,hi,grain));
+	}
+
+// Private data.
+
+	private static final long serialVersionUID = 1L;
+	private Body b = null;
+	private int lo = 0;
+	private int hi = 0;
+	private int grain = 1;
+}
@@ -1,7 +1,13 @@
 package jpsgcs.alun.graph;
 
 import jpsgcs.alun.markov.Parameter;
+import jpsgcs.alun.util.IntArray;
+import jpsgcs.alun.util.UniformGrid;
 import java.util.Collection;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 abstract public class GraphLocator<V,E>
 {
@@ -12,8 +18,61 @@ abstract public class GraphLocator<V,E>
 		return par;
 	}
 
+/**
+	Sets whether sweeps over an ArrayLocatedGraph are done in parallel.
+	In parallel mode the updates for all the moveable vertices are worked
+	out from the positions at the start of the sweep, split across the
+	threads of a ForkJoinPool, and then applied together, rather than each
+	vertex seeing the new positions of those moved before it.
+	Only locators that implement forces() can do this; for the others,
+	and for graphs that are not ArrayLocatedGraphs, this has no effect.
+	It also applies to the sweeps made by MultilevelLayout.
+*/
+	public void setParallel(boolean b)
+	{
+		parallel = b;
+	}
+
+	public boolean isParallel()
+	{
+		return parallel;
+	}
+
+/**
+	Sets the pool used for parallel sweeps. The default is the common pool.
+*/
+	public void setPool(ForkJoinPool p)
+	{
+		pool = p;
+	}
+
+/**
+	Returns the number of vertices that a sweep of the given graph goes
+	over: those that are shown, not counting hidden vertices or the ids
+	of removed ones. A threshold on the value returned by move() should
+	be scaled by this, as MultilevelLayout does, so that it bounds the
+	mean squared step of a vertex.
+*/
+	public static int swept(LocatedGraph<?,?> g)
+	{
+		if (g instanceof ArrayLocatedGraph)
+		{
+			CSRGraph s = ((ArrayLocatedGraph<?,?>)g).snapshot();
+			return s == null ? 0 : s.size();
+		}
+
+		Collection<?> v = g.getVertices();
+		return v == null ? 0 : v.size();
+	}
+
 	public void set(LocatedGraph<V,E> g)
 	{
+		if (g instanceof ArrayLocatedGraph)
+		{
+			set((ArrayLocatedGraph<V,E>)g);
+			return;
+		}
+
 		double r = 100;
 		double dr = 1.0;
 
@@ -36,9 +95,134 @@ abstract public class GraphLocator<V,E>
 		}
 	}
 
+	public void set(ArrayLocatedGraph<V,E> g)
+	{
+		g.sync();
+		CoordArray c = g.coords();
+		double[] x = c.x;
+		double[] y = c.y;
+		for (int i=0; i<c.size() && i<x.length; i++)
+		{
+			if (c.m.get(i))
+			{
+				x[i] = randu()*1000 - 500 ;
+				y[i] = randu()*1000 - 500 ;
+			}
+		}
+		g.sync();
+	}
+
 // Private data and methods.
 
 	protected Parameter[] par = null;
+
+	// Scratch space reused on every sweep so that moving the
+	// vertices makes no garbage.
+
+	protected Derivatives deriv = new Derivatives();
+	protected IntArray local = new IntArray();
+	protected UniformGrid grid = new UniformGrid();
+
+	// The Coords of the vertices, and copies of their positions, for the
+	// locators that work on Coord objects. See gather().
+
+	protected Coord[] pts = new Coord[0];
+	protected double[] ptx = new double[0];
+	protected double[] pty = new double[0];
+
+	private boolean parallel = false;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	// The frozen positions, new positions and squared step sizes
+	// for parallel sweeps, all indexed by vertex id.
+
+	private double[] fx = new double[0];
+	private double[] fy = new double[0];
+	private double[] nx = new double[0];
+	private double[] ny = new double[0];
+	private double[] dd = new double[0];
+
+	// Works out the steps for the vertices from s.vertices[lo] to
+	// s.vertices[hi-1], splitting the range in two until it is small.
+	// Each task writes only to the slots of its own vertices.
+
+	private class Sweep extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		CSRGraph s = null;
+		BitSet m = null;
+		UniformGrid p = null;
+		int lo = 0;
+		int hi = 0;
+
+		Sweep(CSRGraph s, BitSet m, UniformGrid p, int lo, int hi)
+		{
+			this.s = s;
+			this.m = m;
+			this.p = p;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected void compute()
+		{
+			if (hi - lo > 512)
+			{
+				int mid = (lo + hi) / 2;
+				invokeAll(new Sweep(s,m,p,lo,mid), new Sweep(s,m,p,mid,hi));
+				return;
+			}
+
+			Derivatives D = new Derivatives();
+			IntArray l = new IntArray();
+
+			for (int k=lo; k<hi; k++)
+			{
+				int i = s.vertices[k];
+				if (!m.get(i))
+					continue;
+
+				D.clear();
+				forces(D,i,fx,fy,s,p,l);
+				dd[i] = update(nx,ny,i,D);
+			}
+		}
+	}
+
+	// Puts the Coords of the given vertices into pts[], in order, and
+	// their positions into ptx[] and pty[], so that the vertices can be
+	// put in the grid by their place in the collection. Returns the number
+	// of vertices.
+
+	protected int gather(LocatedGraph<V,E> g, Collection<V> vertices)
+	{
+		int n = vertices.size();
+		if (pts.length < n)
+		{
+			pts = new Coord[n];
+			ptx = new double[n];
+			pty = new double[n];
+		}
+
+		int k = 0;
+		for (V a : vertices)
+		{
+			Coord p = g.getCoord(a);
+			pts[k] = p;
+			ptx[k] = p.x;
+			pty[k] = p.y;
+			k++;
+		}
+		return k;
+	}
+
+	// Lets go of the Coords held in pts[].
+
+	protected void release(int n)
+	{
+		Arrays.fill(pts,0,n,null);
+	}
 	
 	// Don't want to use Math .random() and don't want
 	// to bother with passing down a Random object,
@@ -53,171 +237,282 @@ abstract public class GraphLocator<V,E>
 		return  seed/2147483648.0;
 	}
 	
-	protected double update(Coord a, Derivatives D)
+	// Hooks for the sweeps over an ArrayLocatedGraph below. prepare() is
+	// called at the start of each sweep to read the parameters, radius()
+	// gives the range of the local repulsion, or 0 if there is none, and
+	// forces() adds the derivatives of all the forces on vertex i to D
+	// using only the positions in x and y, the snapshot, and the grid.
+
+	protected void prepare()
 	{
-		double d2 = Math.abs(D.d2x + D.d2y);
-		if (d2 > Double.MIN_VALUE)
-		{
-			a.x -= D.dx/d2;
-			a.y -= D.dy/d2;
-			return (D.dx*D.dx + D.dy*D.dy) /d2/d2 ;
-		}
-		return 0;
 	}
 
-	protected void addDerivatives(Derivatives D, Derivatives E, double s)
+	protected double radius()
 	{
-		D.dx += s*E.dx;
-		D.dy += s*E.dy;
-		D.d2x += s*E.d2x;
-		D.d2y += s*E.d2y;
+		return 0;
 	}
 
-	protected Derivatives squaredAttractions(Coord a, Collection<Coord> c)
+	protected void forces(Derivatives D, int i, double[] x, double[] y, CSRGraph s, UniformGrid p, IntArray l)
 	{
-		Derivatives D = new Derivatives();
-		double x = 0;
-		double y = 0;
-		double r = 0;
+	}
 
-		for (Coord b : c)
-		{
-			if (b == a)
-				continue;
-			x += b.x;
-			y += b.y;
-			r += 1;
-		}
+	// Returns true if the locator implements the hooks above, and so
+	// can do parallel sweeps and be used by MultilevelLayout.
 
-		D.dx += 2*r* a.x - 2*x;
-		D.dy += 2*r* a.y - 2*y;
-		D.d2x += 2*r;
-		D.d2y += 2*r;
-		return D;
+	protected boolean hasForces()
+	{
+		return false;
 	}
 
-	protected Derivatives homeCoordAttraction(Coord a, double s)
+	// Moves each vertex in turn to the position given by one Newton-Raphson
+	// step, with each step seeing the new positions of the vertices already
+	// moved.
+
+	protected double sweep(ArrayLocatedGraph<V,E> g)
 	{
-		Derivatives D = new Derivatives();
-			
-		D.dx += 2 * (a.x - s*a.x0);
-		D.dy += 2 * (a.y - s*a.y0);
-		D.d2x += 2;
-		D.d2y += 2;
-	
-		return D;
+		CSRGraph s = g.snapshot();
+		if (s == null)
+			return 0;
+
+		g.sync();
+		CoordArray c = g.coords();
+		double delta = sweep(s,c.x,c.y,c.m);
+		g.sync();
+		return delta;
 	}
 
-	protected Derivatives inverseSquareRepulsions(Coord a, Collection<Coord> c)
+	// Does the same for a graph given as a snapshot with positions and
+	// moveable flags indexed by its vertex ids.
+
+	protected double sweep(CSRGraph s, double[] x, double[] y, BitSet m)
 	{
-		Derivatives D = new Derivatives();
-		for (Coord b : c)
+		double delta = 0;
+
+		prepare();
+		int[] order = s.vertices;
+		double r = radius();
+
+		UniformGrid p = null;
+		if (r > Double.MIN_VALUE)
 		{
-			if (b == a)
-				continue;
+			p = grid;
+			p.build(order,order.length,x,y,r);
+		}
 
-			double x = a.x - b.x;
-			double xx = x*x;
-			double y = a.y - b.y;
-			double yy = y*y;
+		Derivatives D = deriv;
 
-			double r = xx + yy;
-			if (r < Double.MIN_VALUE)
+		for (int k=0; k<order.length; k++)
+		{
+			int i = order[k];
+			if (!m.get(i))
 				continue;
 
-			r = 1.0/r;
-			double s = -2*r*r;
-			double t = 4*s*r;
+			D.clear();
+
+			if (p != null)
+				p.remove(i);
+
+			forces(D,i,x,y,s,p,local);
+			delta += update(x,y,i,D);
 
-			D.dx += s*x;
-			D.dy += s*y;
-			D.d2x += s - t*xx;
-			D.d2y += s - t*yy;
+			if (p != null)
+				p.add(i,x[i],y[i]);
 		}
-		return D;
+
+		return delta;
+	}
+
+	// Works out the Newton-Raphson step for every vertex from a frozen
+	// copy of the positions, in parallel, then applies all the steps.
+
+	protected double parallelSweep(ArrayLocatedGraph<V,E> g)
+	{
+		CSRGraph s = g.snapshot();
+		if (s == null)
+			return 0;
+
+		g.sync();
+		CoordArray c = g.coords();
+		double delta = parallelSweep(s,c.x,c.y,c.m);
+		g.sync();
+		return delta;
 	}
 
-	protected Derivatives localRepulsions(Coord a, Collection<Coord> c, double gamma)
+	protected double parallelSweep(CSRGraph s, double[] x, double[] y, BitSet m)
 	{
-		Derivatives D = new Derivatives();
-		for (Coord b : c)
+		double delta = 0;
+
+		prepare();
+		int[] order = s.vertices;
+		int n = x.length;
+		double r = radius();
+
+		if (fx.length < n)
 		{
-			if (b == a)
-				continue;
+			fx = new double[n];
+			fy = new double[n];
+			nx = new double[n];
+			ny = new double[n];
+			dd = new double[n];
+		}
 
-			double x = a.x - b.x;
-			double xx = x*x;
-			double y = a.y - b.y;
-			double yy = y*y;
+		System.arraycopy(x,0,fx,0,n);
+		System.arraycopy(y,0,fy,0,n);
+		System.arraycopy(x,0,nx,0,n);
+		System.arraycopy(y,0,ny,0,n);
 
-			double r = xx + yy;
-			if (r < Double.MIN_VALUE)
-				continue;
+		UniformGrid p = null;
+		if (r > Double.MIN_VALUE)
+		{
+			p = grid;
+			p.build(order,order.length,fx,fy,r);
+		}
 
-			if (r > gamma)
+		pool.invoke(new Sweep(s,m,p,0,order.length));
+
+		for (int k=0; k<order.length; k++)
+		{
+			int i = order[k];
+			if (!m.get(i))
 				continue;
 
-			r = 1/r;
+			x[i] = nx[i];
+			y[i] = ny[i];
+			delta += dd[i];
+		}
+
+		return delta;
+	}
 
-			double s = gamma * r;
-			s = s*s;
-			double t = 8*s*r;
-			s = 2*(1-s);
-			
-			D.dx += s*x;
-			D.dy += s*y;
-			D.d2x += s + t*xx;
-			D.d2y += s + t*yy;
+	protected double update(Coord a, Derivatives D)
+	{
+		double d2 = Math.abs(D.d2x + D.d2y);
+		if (d2 > Double.MIN_VALUE)
+		{
+			a.x -= D.dx/d2;
+			a.y -= D.dy/d2;
+			return (D.dx*D.dx + D.dy*D.dy) /d2/d2 ;
 		}
-		return D;
+		return 0;
 	}
 
-	protected Derivatives rootedLocalRepulsions(Coord a, Collection<Coord> c, double gamma)
+	protected double update(double[] x, double[] y, int i, Derivatives D)
 	{
-		Derivatives D = new Derivatives();
-		for (Coord b : c)
+		double d2 = Math.abs(D.d2x + D.d2y);
+		if (d2 > Double.MIN_VALUE)
 		{
-			if (b == a)
-				continue;
+			x[i] -= D.dx/d2;
+			y[i] -= D.dy/d2;
+			return (D.dx*D.dx + D.dy*D.dy) /d2/d2 ;
+		}
+		return 0;
+	}
 
-			double x = a.x - b.x;
-			double xx = x*x;
-			double y = a.y - b.y;
-			double yy = y*y;
+// The force functions. Each adds s times the derivatives for a single pair
+// of points that are displaced from each other by (x,y) to the derivatives
+// in D, so that a locator can sum the forces on a vertex into one
+// Derivatives object that it reuses for every vertex.
 
-			double r = xx + yy;
-			if (r < Double.MIN_VALUE)
-				continue;
+	protected void squaredAttraction(Derivatives D, double x, double y, double s)
+	{
+		D.dx += 2*s*x;
+		D.dy += 2*s*y;
+		D.d2x += 2*s;
+		D.d2y += 2*s;
+	}
 
-			if (r > gamma)
-				continue;
+	protected void inverseSquareRepulsion(Derivatives D, double x, double y, double s)
+	{
+		double xx = x*x;
+		double yy = y*y;
+		double r = xx + yy;
+		if (r < Double.MIN_VALUE)
+			return;
+
+		r = 1.0/r;
+		double t = -2*r*r;
+		double u = 4*t*r;
+
+		D.dx += s*t*x;
+		D.dy += s*t*y;
+		D.d2x += s*(t - u*xx);
+		D.d2y += s*(t - u*yy);
+	}
 
-			double s = r - gamma;
-			double t = 3*gamma -r;
-			r = 1/Math.sqrt(r);
-			s *= r*r*r;
-			t *= r*r*r*r*r;
+	protected void localRepulsion(Derivatives D, double x, double y, double gamma, double s)
+	{
+		double xx = x*x;
+		double yy = y*y;
+		double r = xx + yy;
+		if (r < Double.MIN_VALUE || r > gamma)
+			return;
+
+		r = 1/r;
+
+		double t = gamma * r;
+		t = t*t;
+		double u = 8*t*r;
+		t = 2*(1-t);
+
+		D.dx += s*t*x;
+		D.dy += s*t*y;
+		D.d2x += s*(t + u*xx);
+		D.d2y += s*(t + u*yy);
+	}
 
-			D.dx += s*x;
-			D.dy += s*y;
-			D.d2x += s + t*xx;
-			D.d2y += s + t*yy;
-		}
-		return D;
+	protected void rootedLocalRepulsion(Derivatives D, double x, double y, double gamma, double s)
+	{
+		double xx = x*x;
+		double yy = y*y;
+		double r = xx + yy;
+		if (r < Double.MIN_VALUE || r > gamma)
+			return;
+
+		double t = r - gamma;
+		double u = 3*gamma -r;
+		r = 1/Math.sqrt(r);
+		t *= r*r*r;
+		u *= r*r*r*r*r;
+
+		D.dx += s*t*x;
+		D.dy += s*t*y;
+		D.d2x += s*(t + u*xx);
+		D.d2y += s*(t + u*yy);
 	}
 
-	protected Derivatives verticalGenerations(Coord a, Collection<Coord> c, double delta)
+	protected void verticalGeneration(Derivatives D, double y, double delta, double s)
 	{
-		Derivatives D = new Derivatives();
+		D.dy += s*(y + delta);
+		D.d2y += s;
+	}
+
+// Sums of the force functions over collections of vertices, for the
+// locators that work on Coord objects. The vertices are visited in place
+// rather than being copied into a collection of Coords.
 
-		for (Coord b : c)
+	protected void squaredAttractions(Derivatives D, LocatedGraph<V,E> g, Coord a, Collection<V> c, double s)
+	{
+		if (c == null)
+			return;
+
+		for (V v : c)
 		{
-			if (b == a)
-				continue;
-			D.dy += a.y - b.y + delta;
-			D.d2y += 1;
+			Coord b = g.getCoord(v);
+			if (b != a)
+				squaredAttraction(D, a.x-b.x, a.y-b.y, s);
 		}
+	}
 
-		return D;
+	protected void verticalGenerations(Derivatives D, LocatedGraph<V,E> g, Coord a, Collection<V> c, double delta, double s)
+	{
+		if (c == null)
+			return;
+
+		for (V v : c)
+		{
+			Coord b = g.getCoord(v);
+			if (b != a)
+				verticalGeneration(D, a.y-b.y, delta, s);
+		}
 	}
 }
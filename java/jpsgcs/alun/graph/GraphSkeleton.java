@@ -25,8 +25,18 @@ public abstract class GraphSkeleton<V,E>
 	protected Map<V,Map<V,E>> f = null;
 	protected Map<V,Map<V,E>> b = null;
 
+	// Counts modifications to the graph.
+	protected volatile long version = 0;
+
 	abstract protected Map<V,E> makeMap();
 
+	// Makes a map with room for n entries. By default the size is ignored.
+
+	protected Map<V,E> makeMap(int n)
+	{
+		return makeMap();
+	}
+
 /*
 	Graph functions.
 */
@@ -78,6 +88,11 @@ public abstract class GraphSkeleton<V,E>
                 return f != b;
         }
 
+	public long version()
+	{
+		return version;
+	}
+
 	public Set<V> outNeighbours(Object x)
 	{
 		Map<V,E> n = f.get(x);
@@ -98,6 +113,7 @@ public abstract class GraphSkeleton<V,E>
 	{
 		f.clear();
 		b.clear();
+		version++;
 	}
 
 	public void clearEdges()
@@ -106,6 +122,7 @@ public abstract class GraphSkeleton<V,E>
 			n.clear();
 		for (Map<V,E> n : b.values())
 			n.clear();
+		version++;
 	}
 
 	public boolean add(V x)
@@ -117,9 +134,64 @@ public abstract class GraphSkeleton<V,E>
 		if (b != f)
 			b.put(x,makeMap());
 
+		version++;
 		return true;
 	}
 
+/**
+	Adds the vertex, if it is not already there, with room for n neighbours.
+*/
+	public boolean add(V x, int n)
+	{
+		if (f.containsKey(x))
+			return false;
+
+		f.put(x,makeMap(n));
+		if (b != f)
+			b.put(x,makeMap(n));
+
+		version++;
+		return true;
+	}
+
+/**
+	Connects x[i] to y[i] for i from 0 to n-1, adding any vertices
+	that are not already in the graph, and returns the number of new
+	edges. This does the same as calling connect() for each pair, but
+	looks up each end only once.
+*/
+	public int connect(V[] x, V[] y, int n)
+	{
+		int k = 0;
+		for (int i=0; i<n; i++)
+		{
+			Map<V,E> fx = f.get(x[i]);
+			if (fx == null)
+			{
+				add(x[i]);
+				fx = f.get(x[i]);
+			}
+
+			Map<V,E> by = b.get(y[i]);
+			if (by == null)
+			{
+				add(y[i]);
+				by = b.get(y[i]);
+			}
+
+			if (fx.containsKey(y[i]))
+				continue;
+
+			fx.put(y[i],null);
+			by.put(x[i],null);
+			k++;
+		}
+
+		if (k > 0)
+			version++;
+		return k;
+	}
+
 	public boolean remove(Object x)
 	{
 		if (!contains(x))
@@ -138,6 +210,7 @@ public abstract class GraphSkeleton<V,E>
 			b.remove(x);
 		}
 
+		version++;
 		return true;
 	}
 
@@ -159,6 +232,7 @@ public abstract class GraphSkeleton<V,E>
 			b.get(x).clear();
 		}
 
+		version++;
 		return true;
 	}
 
@@ -170,6 +244,7 @@ public abstract class GraphSkeleton<V,E>
 		f.get(x).remove(y);
 		b.get(y).remove(x);
 
+		version++;
 		return true;
 	}
 
@@ -186,6 +261,7 @@ public abstract class GraphSkeleton<V,E>
                 f.get(x).put(y,null);
                 b.get(y).put(x,null);
 
+		version++;
                 return true;
 	}
 
@@ -202,6 +278,7 @@ public abstract class GraphSkeleton<V,E>
                 f.get(x).put(y,e);
                 b.get(y).put(x,e);
 
+		version++;
                 return true;
         }
 
@@ -3,11 +3,12 @@ package jpsgcs.alun.graph;
 import jpsgcs.alun.jtree.Clique;
 import jpsgcs.alun.jtree.JTrees;
 import jpsgcs.alun.util.Pair;
+import jpsgcs.alun.util.IntLines;
+import jpsgcs.alun.util.IntListReader;
 
 import java.util.Random;
 import java.util.Set;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.List;
 import java.util.List;
 import java.util.LinkedHashMap;
@@ -15,6 +16,7 @@ import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.ArrayList;
 import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.IOException;
@@ -28,84 +30,87 @@ public class Graphs
 {
 	static public <V,E> Set<Set<V>> getCliques(Graph<V,E> g)
 	{
-		return getCliques(g,0,50,g.getVertices().size()+1);
+		return getCliques(g,g.getVertices().size()+1);
 	}
 
+/**
+	Returns the maximal cliques of g with at most max vertices.
+	Maximal cliques with more than max vertices are left out, and none
+	of their subsets are returned in their place.
+	The graph is triangulated and each clique of the triangulation that
+	is not triangulated in g is searched with maximalCliques().
+*/
 	static public <V,E> Set<Set<V>> getCliques(Graph<V,E> g, int max)
 	{
-		return getCliques(g,0,50,max);
+		if (JTrees.isTriangulated(g))
+		{
+			return triangulatedcliques(g,max);
+		}
+
+		MaximalSets<V> sets = new MaximalSets<V>();
+		int i = 0;
+		for (Set<V> c : triangulationcliques(g,max))
+			subcliques(g,c,max,sets.part(i++));
+
+		return sets.maximal();
 	}
-	
+
+/**
+	@deprecated The subgraphs are no longer triangulated again or
+	searched by brute force, so opt and redo have no effect.
+	Use getCliques(g).
+*/
+	@Deprecated
 	static public <V,E> Set<Set<V>> getCliques(Graph<V,E> g, int opt, int redo)
 	{
-		return getCliques(g,opt,redo,g.getVertices().size()+1);
+		return getCliques(g);
 	}
 
+/**
+	@deprecated The subgraphs are no longer triangulated again or
+	searched by brute force, so opt and redo have no effect.
+	Use getCliques(g,max).
+*/
+	@Deprecated
 	static public <V,E> Set<Set<V>> getCliques(Graph<V,E> g, int opt, int redo, int max)
+	{
+		return getCliques(g,max);
+	}
+
+	static public <V,E> Set<Set<V>> parallelCliques(Graph<V,E> g)
+	{
+		return parallelCliques(g,g.getVertices().size()+1);
+	}
+
+	static public <V,E> Set<Set<V>> parallelCliques(Graph<V,E> g, int max)
+	{
+		return parallelCliques(g,max,ForkJoinPool.commonPool());
+	}
+
+/**
+	As getCliques(), but the cliques of the triangulation are searched
+	at the same time by the threads of the pool. The graph must not
+	be changed until this returns.
+*/
+	static public <V,E> Set<Set<V>> parallelCliques(final Graph<V,E> g, final int max, ForkJoinPool pool)
 	{
 		if (JTrees.isTriangulated(g))
 		{
 			return triangulatedcliques(g,max);
 		}
 
-		Network<V,E> h = new Network<V,E>();
-		for (V x : g.getVertices())
-		{
-			h.add(x);
-			for (V y : g.getNeighbours(x))
-				h.connect(x,y);
-		}
-
-		triangulate(h);
-
-		PriorityQueue<Set<V>> queue = new PriorityQueue<Set<V>>(11,new BiggestSet());
+		final List<Set<V>> c = new ArrayList<Set<V>>(triangulationcliques(g,max));
+		final MaximalSets<V> sets = new MaximalSets<V>();
 
-		Set<Set<V>> tcliques = triangulatedcliques(h,max);
-
-		for (Set<V> c : tcliques)
+		pool.invoke(new ForEach(new ForEach.Body()
 		{
-			Network<V,E> k = new Network<V,E>();
-			for (V x : c)
+			public void run(int i)
 			{
-				k.add(x);
-				for (V y : c)
-					if (x != y && g.connects(x,y))
-						k.connect(x,y);
+				subcliques(g,c.get(i),max,sets.part(i));
 			}
+		}, 0,c.size(),1));
 
-			if (JTrees.isTriangulated(k))
-			{
-				queue.addAll(triangulatedcliques(k,max));
-			}
-			else
-			{
-				if (k.getVertices().size() > 10 && opt < redo)
-				{
-					queue.addAll(getCliques(k,opt+1,redo));
-				}
-				else
-				{
-					queue.addAll(bruteforcecliques(k,max));
-				}
-			}
-		}
-
-		Set<Set<V>> output = new LinkedHashSet<Set<V>>();
-		while (!queue.isEmpty())
-		{
-			Set<V> x = queue.poll();
-			boolean ok = true;
-			for (Set<V> y : output)
-				if (y.containsAll(x))
-				{
-					ok = false;
-					break;
-				}
-			if (ok)
-				output.add(x);
-		}
-
-		return output;
+		return sets.maximal(pool);
 	}
 
 	static public <V,E> Set<Set<V>> triangulatedcliques(Graph<V,E> g, int max)
@@ -131,11 +136,53 @@ public class Graphs
 		return d.getCliques();
 	}
 
+/**
+	Returns the maximal cliques of the graph with at most max vertices,
+	found by the Bron-Kerbosch search in MaximalCliques. Maximal cliques
+	with more than max vertices are left out, and none of their subsets
+	are returned in their place.
+*/
+	static public <V,E> Set<Set<V>> maximalCliques(Graph<V,E> g, int max)
+	{
+		final Set<Set<V>> C = new LinkedHashSet<Set<V>>();
+		maximalCliques(g,max,new MaximalCliques.Visitor<V>()
+		{
+			public void visit(Set<V> c)
+			{
+				C.add(c);
+			}
+		});
+		return C;
+	}
+
+/**
+	Passes each maximal clique of the graph with at most max vertices
+	to the visitor as it is found.
+*/
+	static public <V,E> void maximalCliques(Graph<V,E> g, int max, MaximalCliques.Visitor<V> visitor)
+	{
+		new MaximalCliques<V>(g).find(max,visitor);
+	}
+
+/**
+	@deprecated Nothing uses this any more. It takes time exponential in
+	the number of vertices. Use getCliques(g), which gives the same cliques.
+*/
+	@Deprecated
 	static public <V,E> Set<Set<V>> bruteforcecliques(Graph<V,E> g)
 	{
 		return bruteforcecliques(g,g.getVertices().size()+1);
 	}
 
+/**
+	@deprecated As bruteforcecliques(g), but only cliques with at most
+	max vertices are returned. These are the sets, with at most max
+	vertices, that are not contained in another such set, so a maximal
+	clique with more than max vertices is replaced by its subsets of
+	max vertices. maximalCliques(g,max) and getCliques(g,max) leave such
+	cliques out instead.
+*/
+	@Deprecated
 	static public <V,E> Set<Set<V>> bruteforcecliques(Graph<V,E> g, int max)
 	{
 		Set<Set<V>> C = new LinkedHashSet<Set<V>>();
@@ -327,6 +374,51 @@ public class Graphs
 		return sequence;
 	}
 
+	// Returns the cliques, with at most max vertices, of a triangulation
+	// of a copy of g.
+
+	static private <V,E> Set<Set<V>> triangulationcliques(Graph<V,E> g, int max)
+	{
+		Network<V,E> h = new Network<V,E>();
+		for (V x : g.getVertices())
+		{
+			h.add(x);
+			for (V y : g.getNeighbours(x))
+				h.connect(x,y);
+		}
+
+		triangulate(h);
+
+		return triangulatedcliques(h,max);
+	}
+
+	// Passes the maximal cliques, with at most max vertices, of the
+	// subgraph of g induced by c to the visitor, in an order that depends
+	// only on g and c. Only reads g, so can be run from many threads at
+	// once.
+
+	static private <V,E> void subcliques(Graph<V,E> g, Set<V> c, int max, MaximalCliques.Visitor<V> sets)
+	{
+		Network<V,E> k = new Network<V,E>();
+		for (V x : c)
+		{
+			k.add(x);
+			for (V y : c)
+				if (x != y && g.connects(x,y))
+					k.connect(x,y);
+		}
+
+		if (JTrees.isTriangulated(k))
+		{
+			for (Set<V> x : triangulatedcliques(k,max))
+				sets.visit(x);
+		}
+		else
+		{
+			maximalCliques(k,max,sets);
+		}
+	}
+
 	static private <V,E> double cost(Graph<V,E> g, V v)
 	{
 		V[] n = (V[]) g.getNeighbours(v).toArray(new Object[0]);
@@ -462,7 +554,34 @@ public class Graphs
 */
 	static public Network<Integer,Object> readAsIntegers() throws IOException
 	{
-		return readAsIntegers(new BufferedReader(new InputStreamReader(System.in)));
+		return readAsIntegers(new IntListReader(System.in).readAll());
+	}
+
+/**
+	Reads a graph from the named file as for readAsIntegers(). The file
+	may be gzipped. The bytes are parsed directly, and a large plain file
+	is parsed in parallel.
+*/
+	static public Network<Integer,Object> readAsIntegers(String file) throws IOException
+	{
+		return readAsIntegers(IntListReader.read(file,Runtime.getRuntime().availableProcessors()));
+	}
+
+/**
+	Makes a graph from lines of integers, each line being a vertex
+	followed by its neighbours.
+*/
+	static public Network<Integer,Object> readAsIntegers(IntLines l)
+	{
+		Network<Integer,Object> g = new Network<Integer,Object>();
+		for (int i=0; i<l.lines(); i++)
+		{
+			Integer v = l.first(i);
+			g.add(v);
+			for (int k=l.start(i); k<l.end(i); k++)
+				g.connect(v,l.get(k));
+		}
+		return g;
 	}
 
 	
@@ -0,0 +1,1003 @@
+package jpsgcs.alun.graph;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.AbstractList;
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+	A Network whose vertices are int values, kept without boxing.
+
+	Each vertex has a row, kept by slot in a RowTable and found from its
+	value through the table's open addressing cells, that holds its
+	neighbours in growable int arrays, in the order the edges were made.
+	A single open addressing table of the pairs of slots that are joined
+	answers connects() without looking through the lists. This takes
+	about a quarter of the memory of a Network<Integer,Object>, with its
+	nested maps and boxed keys, and is several times quicker to build.
+
+	As with Network the vertices and neighbours come out in the order they
+	were added. Self loops are allowed. Objects can be associated with
+	edges, but they are kept in a separate map, so graphs with null edges,
+	as made by connect(x,y), pay nothing for them.
+
+	The methods that take an int are the quick way in. Those of the Graph
+	interface take Integers and return views over the arrays. The views
+	reflect the graph at the time they are made, and should not be kept
+	across changes to it.
+*/
+
+
+public class IntNetwork implements MutableGraph<Integer,Object>, VersionedGraph<Integer,Object>
+{
+	public IntNetwork()
+	{
+		this(false);
+	}
+
+	public IntNetwork(boolean directed)
+	{
+		this.directed = directed;
+		init(16);
+	}
+
+/**
+	Makes a copy of the given graph, which will not change when it does.
+*/
+	public IntNetwork(IntNetwork g)
+	{
+		directed = g.directed;
+		init(g.live);
+
+		for (int s=0; s<g.rows.size(); s++)
+		{
+			IntRow r = g.rows.get(s);
+			if (r == null)
+				continue;
+
+			IntRow q = new IntRow(r.v,0,directed);
+			q.out = Arrays.copyOf(r.out,r.outn);
+			q.outn = r.outn;
+			if (directed)
+			{
+				q.in = Arrays.copyOf(r.in,r.inn);
+				q.inn = r.inn;
+			}
+			rows.set(live,q);
+			rows.file(hash(q.v),live);
+			live++;
+		}
+
+		repair();
+
+		if (g.objects != null)
+			objects = new HashMap<Long,Object>(g.objects);
+		version = g.version;
+	}
+
+// Primitive queries.
+
+/**
+	Returns the number of vertices.
+*/
+	public int size()
+	{
+		return live;
+	}
+
+	public boolean contains(int x)
+	{
+		return slot(x) >= 0;
+	}
+
+	public boolean connects(int x, int y)
+	{
+		int sx = slot(x);
+		int sy = slot(y);
+		return sx >= 0 && sy >= 0 && joined(sx,sy);
+	}
+
+/**
+	Returns the vertices in the order they were added.
+*/
+	public int[] vertices()
+	{
+		int[] v = new int[live];
+		int k = 0;
+		for (int s=0; s<rows.size(); s++)
+		{
+			IntRow r = rows.get(s);
+			if (r != null)
+				v[k++] = r.v;
+		}
+		return v;
+	}
+
+/**
+	Returns the vertices joined to x by edges in either direction,
+	or null if x is not in the graph.
+*/
+	public int[] neighbours(int x)
+	{
+		IntRow r = rows.get(slot(x));
+		if (r == null)
+			return null;
+
+		if (!directed)
+			return Arrays.copyOf(r.out,r.outn);
+
+		// In neighbours first, then out neighbours that are not also in
+		// neighbours, as for a Network.
+
+		int[] a = Arrays.copyOf(r.in,r.inn+r.outn);
+		int[] b = pairs == null ? sorted(r.in,r.inn) : null;
+		int s = slot(x);
+		int k = r.inn;
+		for (int i=0; i<r.outn; i++)
+		{
+			int y = r.out[i];
+			if (b == null ? findPair(pair(slot(y),s)) < 0 : Arrays.binarySearch(b,y) < 0)
+				a[k++] = y;
+		}
+		return Arrays.copyOf(a,k);
+	}
+
+/**
+	Returns the vertices that x has edges to, or null if x is not in the graph.
+*/
+	public int[] outNeighbours(int x)
+	{
+		IntRow r = rows.get(slot(x));
+		return r == null ? null : Arrays.copyOf(r.out,r.outn);
+	}
+
+/**
+	Returns the vertices that have edges to x, or null if x is not in the graph.
+*/
+	public int[] inNeighbours(int x)
+	{
+		IntRow r = rows.get(slot(x));
+		return r == null ? null : directed ? Arrays.copyOf(r.in,r.inn) : Arrays.copyOf(r.out,r.outn);
+	}
+
+/**
+	Returns the number of edges out of x, or -1 if x is not in the graph.
+*/
+	public int outDegree(int x)
+	{
+		IntRow r = rows.get(slot(x));
+		return r == null ? -1 : r.outn;
+	}
+
+/**
+	Returns the number of edges into x, or -1 if x is not in the graph.
+*/
+	public int inDegree(int x)
+	{
+		IntRow r = rows.get(slot(x));
+		return r == null ? -1 : directed ? r.inn : r.outn;
+	}
+
+// Primitive changes.
+
+/**
+	Makes room for n more vertices.
+*/
+	public void reserve(int m)
+	{
+		check();
+		rows.reserve(m);
+	}
+
+	public boolean add(int x)
+	{
+		return add(x,0);
+	}
+
+/**
+	Adds the vertex, if it is not already there, with room for d neighbours.
+*/
+	public boolean add(int x, int d)
+	{
+		check();
+		if (slot(x) >= 0)
+			return false;
+
+		int s = rows.size();
+		rows.set(s,new IntRow(x,d,directed));
+		rows.file(hash(x),s);
+		live++;
+
+		version++;
+		return true;
+	}
+
+	public boolean remove(int x)
+	{
+		check();
+		int s = slot(x);
+		if (s < 0)
+			return false;
+
+		unlink(s);
+		rows.set(s,null);
+		live--;
+
+		int n = rows.size();
+		if (n - live > 1024 && n - live > live)
+			compact();
+
+		version++;
+		return true;
+	}
+
+	public boolean connect(int x, int y)
+	{
+		add(x);
+		add(y);
+		int sx = slot(x);
+		int sy = slot(y);
+		if (!link(sx,sy))
+			return false;
+
+		version++;
+		return true;
+	}
+
+/**
+	Connects x[i] to y[i] for i from 0 to m-1, adding any vertices that
+	are not already in the graph, and returns the number of new edges.
+*/
+	public int connect(int[] x, int[] y, int m)
+	{
+		int k = 0;
+		for (int i=0; i<m; i++)
+		{
+			add(x[i]);
+			add(y[i]);
+			if (link(slot(x[i]),slot(y[i])))
+				k++;
+		}
+
+		if (k > 0)
+			version++;
+		return k;
+	}
+
+	public boolean disconnect(int x, int y)
+	{
+		check();
+		int sx = slot(x);
+		int sy = slot(y);
+		if (sx < 0 || sy < 0)
+			return false;
+
+		int h = findPair(pair(sx,sy));
+		if (h < 0)
+			return false;
+
+		removePair(h);
+		rows.edit(sx).cutOut(y);
+		if (directed)
+			rows.edit(sy).cutIn(x);
+		else if (sx != sy)
+			rows.edit(sy).cutOut(x);
+		if (objects != null && objects.containsKey(edge(x,y)))
+			objects().remove(edge(x,y));
+
+		version++;
+		return true;
+	}
+
+/**
+	Removes all the edges to and from x.
+*/
+	public boolean disconnect(int x)
+	{
+		check();
+		int s = slot(x);
+		if (s < 0)
+			return false;
+
+		unlink(s);
+		version++;
+		return true;
+	}
+
+// Graph interface.
+
+	public boolean contains(Object x)
+	{
+		return x instanceof Integer && contains(((Integer)x).intValue());
+	}
+
+	public boolean connects(Object x, Object y)
+	{
+		return x instanceof Integer && y instanceof Integer && connects(((Integer)x).intValue(),((Integer)y).intValue());
+	}
+
+	public Object connection(Object x, Object y)
+	{
+		if (objects == null || !(x instanceof Integer) || !(y instanceof Integer))
+			return null;
+		return objects.get(edge((Integer)x,(Integer)y));
+	}
+
+	public Collection<Object> connections(Object x)
+	{
+		IntRow r = rows.get(slot(x));
+		if (r == null)
+			return null;
+
+		List<Object> l = new ArrayList<Object>(r.outn);
+		for (int i=0; i<r.outn; i++)
+			l.add(objects == null ? null : objects.get(edge(r.v,r.out[i])));
+		return l;
+	}
+
+	public Collection<Integer> getVertices()
+	{
+		return vertices;
+	}
+
+	public Collection<Integer> getNeighbours(Object x)
+	{
+		int s = slot(x);
+		IntRow r = rows.get(s);
+		if (r == null)
+			return null;
+		if (!directed)
+			return new Ints(s,r.out,r.outn);
+		int[] a = neighbours(r.v);
+		return new Ints(-1,a,a.length);
+	}
+
+	public Collection<Integer> outNeighbours(Object x)
+	{
+		int s = slot(x);
+		IntRow r = rows.get(s);
+		return r == null ? null : new Ints(s,r.out,r.outn);
+	}
+
+	public Collection<Integer> inNeighbours(Object x)
+	{
+		int s = slot(x);
+		IntRow r = rows.get(s);
+		if (r == null)
+			return null;
+		return directed ? new Ints(-1,r.in,r.inn) : new Ints(s,r.out,r.outn);
+	}
+
+	public boolean isDirected()
+	{
+		return directed;
+	}
+
+	public long version()
+	{
+		return version;
+	}
+
+// MutableGraph interface.
+
+	public void clear()
+	{
+		check();
+		init(16);
+		objects = null;
+		shared = false;
+		version++;
+	}
+
+/**
+	Removes all the edges but leaves the vertices.
+*/
+	public void clearEdges()
+	{
+		check();
+		for (int s=0; s<rows.size(); s++)
+		{
+			IntRow r = rows.edit(s);
+			if (r != null)
+				r.clear();
+		}
+		Arrays.fill(pairs,0L);
+		npairs = 0;
+		objects = null;
+		shared = false;
+		version++;
+	}
+
+	public boolean add(Integer x)
+	{
+		return add(x.intValue());
+	}
+
+	public boolean remove(Object x)
+	{
+		return x instanceof Integer && remove(((Integer)x).intValue());
+	}
+
+	public boolean connect(Integer x, Integer y)
+	{
+		return connect(x.intValue(),y.intValue());
+	}
+
+	public boolean connect(Integer x, Integer y, Object e)
+	{
+		boolean b = connect(x.intValue(),y.intValue());
+		long k = edge(x,y);
+
+		if (e == null)
+		{
+			if (objects != null && objects.containsKey(k))
+			{
+				objects().remove(k);
+				b = true;
+			}
+		}
+		else
+		{
+			if (objects == null)
+				objects = new HashMap<Long,Object>();
+			if (objects().put(k,e) != e)
+				b = true;
+		}
+
+		if (b)
+			version++;
+		return b;
+	}
+
+	public boolean disconnect(Object x, Object y)
+	{
+		return x instanceof Integer && y instanceof Integer && disconnect(((Integer)x).intValue(),((Integer)y).intValue());
+	}
+
+	public boolean disconnect(Object x)
+	{
+		return x instanceof Integer && disconnect(((Integer)x).intValue());
+	}
+
+	public String toString()
+	{
+		StringBuffer b = new StringBuffer();
+		for (int s=0; s<rows.size(); s++)
+		{
+			IntRow r = rows.get(s);
+			if (r == null)
+				continue;
+			b.append(r.v+"\t");
+			for (int i=0; i<r.outn; i++)
+				b.append(r.out[i]+" ");
+			b.append("\n");
+		}
+		if (b.length() > 0)
+			b.deleteCharAt(b.length()-1);
+		return b.toString();
+	}
+
+// Package methods.
+
+/**
+	Returns a read only copy of the graph as it is now, made without
+	copying it. The copy shares the rows, the cells that find them, and
+	the edge objects, and this graph copies any of them that it changes
+	afterwards. The copy answers connects() from the neighbour lists, as
+	it has no table of pairs. It is left to the caller to make sure that
+	the copy is safely handed to other threads.
+*/
+	IntNetwork freeze()
+	{
+		IntNetwork g = new IntNetwork(this,rows.freeze());
+		shared = objects != null;
+		return g;
+	}
+
+// Private data and methods.
+
+	private static final int[] EMPTY = new int[0];
+
+	private boolean directed = false;
+	private boolean frozen = false;
+	private volatile long version = 0;
+
+	// Slots 0 to rows.size()-1 have been used, live of them by vertices
+	// that are still in the graph. The slots of removed vertices are empty.
+
+	private RowTable<IntRow> rows = null;
+	private int live = 0;
+
+	// Open addressing set of joined slot pairs, 0 for empty, or null
+	// for a frozen copy.
+
+	private long[] pairs = null;
+	private int npairs = 0;
+
+	// Objects associated with edges, keyed by the pair of vertices, and
+	// whether the map is shared with a frozen copy.
+
+	private Map<Long,Object> objects = null;
+	private boolean shared = false;
+
+	private static final RowTable.Hasher<IntRow> HASHER = new RowTable.Hasher<IntRow>()
+	{
+		public int hash(IntRow r)
+		{
+			return IntNetwork.hash(r.v);
+		}
+	};
+
+	private Collection<Integer> vertices = new AbstractCollection<Integer>()
+	{
+		public int size()
+		{
+			return live;
+		}
+
+		public boolean contains(Object x)
+		{
+			return IntNetwork.this.contains(x);
+		}
+
+		public Iterator<Integer> iterator()
+		{
+			return new Iterator<Integer>()
+			{
+				int s = next(0);
+
+				int next(int t)
+				{
+					while (t < rows.size() && rows.get(t) == null)
+						t++;
+					return t;
+				}
+
+				public boolean hasNext()
+				{
+					return s < rows.size();
+				}
+
+				public Integer next()
+				{
+					if (s >= rows.size())
+						throw new NoSuchElementException();
+					int v = rows.get(s).v;
+					s = next(s+1);
+					return v;
+				}
+
+				public void remove()
+				{
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	};
+
+	// A read only copy of g that shares its storage.
+
+	private IntNetwork(IntNetwork g, RowTable<IntRow> t)
+	{
+		directed = g.directed;
+		frozen = true;
+		version = g.version;
+		rows = t;
+		live = g.live;
+		objects = g.objects;
+	}
+
+	// The row of a vertex: its value and its neighbour lists. The lists
+	// of a copy are shared with the row it was copied from until they
+	// are made shorter. Adding to the end of a shared list does not
+	// change what the older row sees, as it only reads up to its own
+	// count.
+
+	private static class IntRow extends RowTable.Row
+	{
+		IntRow(int v, int d, boolean directed)
+		{
+			this.v = v;
+			out = d > 0 ? new int[d] : EMPTY;
+			if (directed)
+				in = d > 0 ? new int[d] : EMPTY;
+			mine = true;
+		}
+
+		IntRow(IntRow r)
+		{
+			v = r.v;
+			out = r.out;
+			outn = r.outn;
+			in = r.in;
+			inn = r.inn;
+			mine = false;
+		}
+
+		RowTable.Row copy()
+		{
+			return new IntRow(this);
+		}
+
+		void addOut(int y)
+		{
+			if (outn == out.length)
+				out = Arrays.copyOf(out,Math.max(4,2*outn));
+			out[outn++] = y;
+		}
+
+		void addIn(int y)
+		{
+			if (inn == in.length)
+				in = Arrays.copyOf(in,Math.max(4,2*inn));
+			in[inn++] = y;
+		}
+
+		// Removes y from the lists, keeping the order of the rest.
+
+		void cutOut(int y)
+		{
+			own();
+			outn = cut(out,outn,y);
+		}
+
+		void cutIn(int y)
+		{
+			own();
+			if (in == null)
+				outn = cut(out,outn,y);
+			else
+				inn = cut(in,inn,y);
+		}
+
+		void clear()
+		{
+			out = EMPTY;
+			outn = 0;
+			if (in != null)
+			{
+				in = EMPTY;
+				inn = 0;
+			}
+			mine = true;
+		}
+
+		// Copies the lists if they are shared, before they are made shorter.
+
+		private void own()
+		{
+			if (mine)
+				return;
+			out = Arrays.copyOf(out,Math.max(outn,1));
+			if (in != null)
+				in = Arrays.copyOf(in,Math.max(inn,1));
+			mine = true;
+		}
+
+		final int v;
+		int[] out = null;
+		int outn = 0;
+		int[] in = null;
+		int inn = 0;
+		private boolean mine = false;
+	}
+
+	// A read only list of the first k entries of an array of neighbours.
+	// If s is the slot of the vertex whose out neighbours they are,
+	// contains() is answered without looking through the list when
+	// there is a table of pairs.
+
+	private class Ints extends AbstractList<Integer>
+	{
+		Ints(int s, int[] a, int k)
+		{
+			this.s = s;
+			this.a = a;
+			this.k = k;
+		}
+
+		public Integer get(int i)
+		{
+			if (i >= k)
+				throw new IndexOutOfBoundsException();
+			return a[i];
+		}
+
+		public int size()
+		{
+			return k;
+		}
+
+		public boolean contains(Object x)
+		{
+			if (s < 0 || pairs == null)
+				return super.contains(x);
+			int t = slot(x);
+			return t >= 0 && findPair(pair(s,t)) >= 0;
+		}
+
+		int s = 0;
+		int[] a = null;
+		int k = 0;
+	}
+
+	private void init(int cap)
+	{
+		rows = new RowTable<IntRow>(cap,HASHER);
+		live = 0;
+		pairs = new long[Math.max(32,Integer.highestOneBit(Math.max(1,2*cap-1)) << 1)];
+		npairs = 0;
+	}
+
+	private void check()
+	{
+		if (frozen)
+			throw new UnsupportedOperationException("This copy of the graph is read only.");
+	}
+
+	// The map of edge objects, copied first if it is shared.
+
+	private Map<Long,Object> objects()
+	{
+		if (shared)
+		{
+			objects = new HashMap<Long,Object>(objects);
+			shared = false;
+		}
+		return objects;
+	}
+
+	// Links slot a to slot b, returning false if they are already linked.
+
+	private boolean link(int a, int b)
+	{
+		long p = pair(a,b);
+		if (findPair(p) >= 0)
+			return false;
+
+		putPair(p);
+		IntRow ra = rows.edit(a);
+		IntRow rb = a == b ? ra : rows.edit(b);
+		ra.addOut(rb.v);
+		if (directed)
+			rb.addIn(ra.v);
+		else if (a != b)
+			rb.addOut(ra.v);
+		return true;
+	}
+
+	// Removes all the edges at slot s.
+
+	private void unlink(int s)
+	{
+		IntRow r = rows.edit(s);
+		int x = r.v;
+
+		for (int i=0; i<r.outn; i++)
+		{
+			int y = r.out[i];
+			int t = slot(y);
+			removePair(findPair(pair(s,t)));
+			if (t != s)
+				rows.edit(t).cutIn(x);
+			if (objects != null && objects.containsKey(edge(x,y)))
+				objects().remove(edge(x,y));
+		}
+
+		if (directed)
+		{
+			for (int i=0; i<r.inn; i++)
+			{
+				int w = r.in[i];
+				int t = slot(w);
+				if (t == s)
+					continue;
+				removePair(findPair(pair(t,s)));
+				rows.edit(t).cutOut(x);
+				if (objects != null && objects.containsKey(edge(w,x)))
+					objects().remove(edge(w,x));
+			}
+		}
+
+		r.clear();
+	}
+
+	private static int cut(int[] a, int k, int v)
+	{
+		for (int i=0; i<k; i++)
+		{
+			if (a[i] == v)
+			{
+				System.arraycopy(a,i+1,a,i,k-i-1);
+				return k-1;
+			}
+		}
+		return k;
+	}
+
+	// Whether slot a has an edge to slot b. Without a table of pairs
+	// this looks through the shorter of the two lists.
+
+	private boolean joined(int a, int b)
+	{
+		if (pairs != null)
+			return findPair(pair(a,b)) >= 0;
+
+		IntRow ra = rows.get(a);
+		IntRow rb = rows.get(b);
+		int[] l = directed ? rb.in : rb.out;
+		int k = directed ? rb.inn : rb.outn;
+		if (ra.outn <= k)
+			return has(ra.out,ra.outn,rb.v);
+		return has(l,k,ra.v);
+	}
+
+	private static boolean has(int[] a, int k, int v)
+	{
+		for (int i=0; i<k; i++)
+			if (a[i] == v)
+				return true;
+		return false;
+	}
+
+	private static int[] sorted(int[] a, int k)
+	{
+		int[] b = Arrays.copyOf(a,k);
+		Arrays.sort(b);
+		return b;
+	}
+
+	// Moves the live rows down to fill the gaps left by removed vertices.
+
+	private void compact()
+	{
+		RowTable<IntRow> t = rows.renew(live);
+		int k = 0;
+		for (int s=0; s<rows.size(); s++)
+		{
+			IntRow r = rows.get(s);
+			if (r == null)
+				continue;
+			t.move(k,r);
+			t.file(hash(r.v),k);
+			k++;
+		}
+		rows = t;
+
+		Arrays.fill(pairs,0L);
+		npairs = 0;
+		repair();
+	}
+
+	// Fills the table of pairs from the rows.
+
+	private void repair()
+	{
+		for (int s=0; s<rows.size(); s++)
+		{
+			IntRow r = rows.get(s);
+			if (r == null)
+				continue;
+			for (int i=0; i<r.outn; i++)
+			{
+				int t = slot(r.out[i]);
+				if (directed || s <= t)
+					putPair(pair(s,t));
+			}
+		}
+	}
+
+	// The slot of a vertex. A cell whose slot no longer holds the vertex
+	// is passed over, so that vertices that were removed, or that were
+	// added after a frozen copy was made, are not found.
+
+	private int slot(Object x)
+	{
+		return x instanceof Integer ? slot(((Integer)x).intValue()) : -1;
+	}
+
+	private int slot(int x)
+	{
+		int h = hash(x);
+		for (int c = rows.find(h); c >= 0; c = rows.findNext(c,h))
+		{
+			int s = rows.slotAt(c);
+			IntRow r = rows.get(s);
+			if (r != null && r.v == x)
+				return s;
+		}
+		return -1;
+	}
+
+	private static int hash(int x)
+	{
+		x *= 0x9E3779B1;
+		return x ^ (x >>> 16);
+	}
+
+	// The set of joined pairs of slots.
+
+	private long pair(int a, int b)
+	{
+		if (!directed && a > b)
+		{
+			int t = a;
+			a = b;
+			b = t;
+		}
+		return (long)(a+1) << 32 | (b+1);
+	}
+
+	private int findPair(long p)
+	{
+		int m = pairs.length - 1;
+		for (int h = hash(p) & m; pairs[h] != 0; h = (h+1) & m)
+			if (pairs[h] == p)
+				return h;
+		return -1;
+	}
+
+	private void putPair(long p)
+	{
+		if (2*(npairs+1) > pairs.length)
+		{
+			long[] old = pairs;
+			pairs = new long[2*old.length];
+			npairs = 0;
+			for (long q : old)
+				if (q != 0)
+					putPair(q);
+		}
+
+		int m = pairs.length - 1;
+		int h = hash(p) & m;
+		while (pairs[h] != 0)
+			h = (h+1) & m;
+		pairs[h] = p;
+		npairs++;
+	}
+
+	private void removePair(int h)
+	{
+		if (h < 0)
+			return;
+
+		int m = pairs.length - 1;
+		for (int j = (h+1) & m; pairs[j] != 0; j = (j+1) & m)
+		{
+			int k = hash(pairs[j]) & m;
+			if (h <= j ? (k <= h || k > j) : (k <= h && k > j))
+			{
+				pairs[h] = pairs[j];
+				h = j;
+			}
+		}
+		pairs[h] = 0;
+		npairs--;
+	}
+
+	private static int hash(long p)
+	{
+		p *= 0x9E3779B97F4A7C15L;
+		return (int)(p ^ (p >>> 32));
+	}
+
+	// The key for the object on the edge from x to y.
+
+	private long edge(int x, int y)
+	{
+		if (!directed && x > y)
+		{
+			int t = x;
+			x = y;
+			y = t;
+		}
+		return (long)x << 32 | (y & 0xffffffffL);
+	}
+}
@@ -0,0 +1,88 @@
+package jpsgcs.alun.graph;
+
+/**
+	Drives a GraphLocator without a display. Sweeps are made one after
+	another, with no pause between them, until the mean squared step size
+	of the vertices swept, the value returned by move() divided by the
+	number of vertices, drops below a threshold or a given number of
+	sweeps have been made. Optionally a MultilevelLayout is
+	made first to give the sweeps a good start.
+*/
+
+public class LayoutRunner<V,E>
+{
+	public LayoutRunner(GraphLocator<V,E> locator)
+	{
+		loc = locator;
+	}
+
+/**
+	Sets the most sweeps that run() will make.
+*/
+	public void setSweeps(int n)
+	{
+		sweeps = n;
+	}
+
+/**
+	Sets the mean squared step size per vertex below which the layout
+	is taken to have converged, as for MultilevelLayout.
+*/
+	public void setThreshold(double t)
+	{
+		threshold = t;
+	}
+
+/**
+	Sets whether run() starts with a multilevel layout rather than
+	with the current positions of the vertices.
+*/
+	public void setMultilevel(boolean b)
+	{
+		multilevel = b;
+	}
+
+/**
+	Makes sweeps of the graph until the layout converges or the
+	budget of sweeps is spent, and returns the number of sweeps made.
+*/
+	public int run(LocatedGraph<V,E> g)
+	{
+		if (multilevel)
+			new MultilevelLayout<V,E>(loc).layout(g);
+
+		delta = Double.MAX_VALUE;
+		int k = 0;
+		while (k < sweeps)
+		{
+			delta = loc.move(g);
+			k++;
+			limit = threshold * Math.max(1,GraphLocator.swept(g));
+			if (delta < limit)
+				break;
+		}
+		return k;
+	}
+
+/**
+	Returns the value given by move() in the last sweep.
+*/
+	public double getDelta()
+	{
+		return delta;
+	}
+
+	public boolean converged()
+	{
+		return delta < limit;
+	}
+
+// Private data.
+
+	private GraphLocator<V,E> loc = null;
+	private int sweeps = 10000;
+	private double threshold = 0.01;
+	private double limit = 0;
+	private boolean multilevel = false;
+	private double delta = Double.MAX_VALUE;
+}
@@ -1,9 +1,9 @@
 package jpsgcs.alun.graph;
 
 import jpsgcs.alun.markov.Parameter;
-import jpsgcs.alun.util.RadixPlaneSorter;
+import jpsgcs.alun.util.UniformGrid;
+import jpsgcs.alun.util.IntArray;
 import java.util.Collection;
-import java.util.LinkedHashSet;
 
 public class LocalLocator<V,E> extends GraphLocator<V,E>
 {
@@ -15,41 +15,110 @@ public class LocalLocator<V,E> extends GraphLocator<V,E>
 
 	public double move(LocatedGraph<V,E> g)
 	{
+		if (g instanceof ArrayLocatedGraph)
+			return move((ArrayLocatedGraph<V,E>)g);
+
 		double delta = 0;
 		double d = par[0].getValue();
 		double gamma = d*d;
 		double alpha = 2*d;
 		
-		Collection<V> vertices = new LinkedHashSet<V>(g.getVertices());
-		RadixPlaneSorter<Coord> p = null;
+		Collection<V> vertices = g.getVertices();
+		if (vertices == null)
+			return delta;
+
+		int n = gather(g,vertices);
+
+		UniformGrid p = null;
 		if (alpha > Double.MIN_VALUE)
 		{
-			p = new RadixPlaneSorter<Coord>(Math.sqrt(gamma),Math.sqrt(gamma),40);
-			for (V a : vertices)
-				p.add(g.getCoord(a));
-		}	
+			p = grid;
+			p.build(n,ptx,pty,Math.sqrt(gamma));
+		}
+
+		Derivatives D = deriv;
 			
+		int k = 0;
 		for (V a : vertices)
 		{
-			Coord pa = g.getCoord(a);
+			int i = k++;
+			Coord pa = pts[i];
 			if (!pa.m)
 				continue;
 
-			Derivatives D = new Derivatives();
+			D.clear();
 			
 			if (p != null)
 			{
-				p.remove(pa);
-				addDerivatives(D, localRepulsions(pa,p.getLocal(pa,Math.sqrt(gamma)),gamma), alpha);
+				p.remove(i);
+				p.getLocal(pa.x,pa.y,Math.sqrt(gamma),ptx,pty,local);
+				for (int j=0; j<local.size(); j++)
+				{
+					Coord pb = pts[local.get(j)];
+					localRepulsion(D, pa.x-pb.x, pa.y-pb.y, gamma, alpha);
+				}
 			}
 
-			addDerivatives(D, squaredAttractions(pa,g.getCoords(g.getNeighbours(a))), 1);
+			squaredAttractions(D, g, pa, g.getNeighbours(a), 1);
+
 			delta += update(pa,D);
 
 			if (p != null)
-				p.add(pa);
+			{
+				ptx[i] = pa.x;
+				pty[i] = pa.y;
+				p.add(i,pa.x,pa.y);
+			}
 		}
 
+		release(n);
 		return delta;
-        }
+	}
+
+	public double move(ArrayLocatedGraph<V,E> g)
+	{
+		return isParallel() ? parallelSweep(g) : sweep(g);
+	}
+
+	protected boolean hasForces()
+	{
+		return true;
+	}
+
+	protected void prepare()
+	{
+		d = par[0].getValue();
+		gamma = d*d;
+		alpha = 2*d;
+	}
+
+	protected double radius()
+	{
+		return alpha > Double.MIN_VALUE ? d : 0;
+	}
+
+	protected void forces(Derivatives D, int i, double[] x, double[] y, CSRGraph s, UniformGrid p, IntArray l)
+	{
+		if (p != null)
+		{
+			p.getLocal(x[i],y[i],d,x,y,l);
+			for (int j=0; j<l.size(); j++)
+			{
+				int b = l.get(j);
+				localRepulsion(D, x[i]-x[b], y[i]-y[b], gamma, alpha);
+			}
+		}
+
+		for (int e=s.offset(i), f=s.offset(i+1); e<f; e++)
+		{
+			int b = s.target(e);
+			squaredAttraction(D, x[i]-x[b], y[i]-y[b], 1);
+		}
+	}
+
+// Private data.
+
+	protected double d = 0;
+	protected double gamma = 0;
+	protected double alpha = 0;
 }
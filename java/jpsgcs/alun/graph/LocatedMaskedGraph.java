@@ -1,26 +1,50 @@
 package jpsgcs.alun.graph;
 
+import java.util.AbstractCollection;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.Set;
 import java.util.Map;
 import java.util.LinkedHashSet;
 import java.util.LinkedHashMap;
 import java.util.NoSuchElementException;
-import java.util.ConcurrentModificationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+	A graph with coordinates for its vertices, and with some vertices hidden.
+	The vertex and neighbour collections it returns are read only views,
+	with the hidden vertices filtered out, of the collections of the
+	underlying graph, so they are cheap to get. When the underlying graph
+	is a ConcurrentGraph they view collections that the graph will not
+	change, so they are safe to iterate while the graph is changed. For
+	other graphs they view the graph's own collections, and iterating
+	them while the graph is changed can throw a
+	ConcurrentModificationException, as iterating the graph would.
+
+	The hidden vertices are kept in a concurrent set, so they can be
+	shown or hidden by one thread while another reads the graph.
+*/
 
 public class LocatedMaskedGraph<V,E> implements MaskedGraph<V,E>, LocatedGraph<V,E>
 {
 	public LocatedMaskedGraph(Graph<V,E> graph)
+	{
+		this(graph,true);
+	}
+
+	// Subclasses that store their own coordinates can skip
+	// making a Coord for each vertex.
+
+	protected LocatedMaskedGraph(Graph<V,E> graph, boolean coords)
 	{
 		g = graph;
-		hide = new LinkedHashSet<V>();
+		hide = Collections.newSetFromMap(new ConcurrentHashMap<V,Boolean>());
 
 		point = new LinkedHashMap<V,Coord>();
-		for (V v : g.getVertices())
-		{
-			point.put(v, ( v instanceof Coord ? (Coord) v : new Coord() ) );
-		}
+		if (coords)
+			for (V v : g.getVertices())
+				point.put(v, ( v instanceof Coord ? (Coord) v : new Coord() ) );
 	}
 
 	public Collection<Coord> getShownCoords()
@@ -100,14 +124,16 @@ public class LocatedMaskedGraph<V,E> implements MaskedGraph<V,E>, LocatedGraph<V
 
 // Mask interface
 
-	public void show(V x)
+	synchronized public void show(V x)
 	{
-		hide.remove(x);
+		if (x != null && hide.remove(x))
+			count(x,-1);
 	}
 
-	public void hide(V x)
+	synchronized public void hide(V x)
 	{
-		hide.add(x);
+		if (x != null && hide.add(x))
+			count(x,1);
 	}
 
 	public void show(Collection<V> c)
@@ -122,6 +148,14 @@ public class LocatedMaskedGraph<V,E> implements MaskedGraph<V,E>, LocatedGraph<V
 			hide(v);
 	}
 
+/**
+	Returns a read only view of the hidden vertices.
+*/
+	public Collection<V> getHidden()
+	{
+		return Collections.unmodifiableSet(hide);
+	}
+
 	public Graph<V,E> completeGraph()
 	{
 		return g;
@@ -131,87 +165,54 @@ public class LocatedMaskedGraph<V,E> implements MaskedGraph<V,E>, LocatedGraph<V
 
 	public boolean contains(Object x)
 	{
-		return g.contains(x) && !hide.contains(x);
+		return g.contains(x) && !hidden(x);
 	}
 
 	public boolean connects(Object x, Object y)
 	{
-		return !hide.contains(x) && !hide.contains(y) && g.connects(x,y);
+		return !hidden(x) && !hidden(y) && g.connects(x,y);
 	}
 
 	public E connection(Object x, Object y)
 	{
-		return !hide.contains(x) && !hide.contains(y) ? g.connection(x,y) : null ;
+		return !hidden(x) && !hidden(y) ? g.connection(x,y) : null ;
 	}	
 
 	public Collection<E> connections(Object x)
 	{
-		return !hide.contains(x) ? g.connections(x) : null ;
+		return !hidden(x) ? g.connections(x) : null ;
 	}
 
 	public Collection<V> getVertices()
 	{
-		try
-		{
-			Set<V> v = new LinkedHashSet<V>(g.getVertices());
-			v.removeAll(hide);
-			return v;
-		}
-		catch (NoSuchElementException e)
-		{
-		//	System.err.println("Caught in LocatedMaskedGraph.getVertices()");
-			return null;
-		}
-		catch (ConcurrentModificationException e)
+		// A view of one version of a graph that another thread may be
+		// changing can be iterated more than once with the same result.
+
+		if (g instanceof ConcurrentGraph)
 		{
-		//	System.err.println("Caught in LocatedMaskedGraph.getVertices()");
-			return null;
+			VersionedGraph<V,E> s = ((ConcurrentGraph<V,E>)g).snapshot();
+			return new Vertices(s.getVertices(),s);
 		}
+
+		if (g instanceof VersionedGraph)
+			return new Vertices(g.getVertices(),(VersionedGraph<V,E>)g);
+
+		return new Shown(g.getVertices());
 	}
 
 	public Collection<V> getNeighbours(Object x)
 	{
-		try
-		{
-			Collection<V> n = new LinkedHashSet<V>();
-			Collection<? extends V> h = g.getNeighbours(x);
-			if (h != null)
-			{
-				for (V z : h)
-					if (z != null)
-						n.add(z);
-				//n.addAll(h);
-			}
-			n.removeAll(hide);
-			return n;
-		}
-		catch (ConcurrentModificationException e)
-		{
-		//	System.err.println("Caught in LocatedMaskedGraph.getNeighbours()");
-			return null;
-		}
+		return shown(g.getNeighbours(x));
 	}
 
 	public Collection<V> inNeighbours(Object x)
 	{
-		//Collection<V> n = new LinkedHashSet<V>(g.inNeighbours(x));
-		Collection<V> n = new LinkedHashSet<V>();
-		Collection<? extends V> h = g.inNeighbours(x);
-		if (h != null)
-			n.addAll(h);
-		n.removeAll(hide);
-		return n;
+		return shown(g.inNeighbours(x));
 	}
 
 	public Collection<V> outNeighbours(Object x)
 	{
-		//Collection<V> n = new LinkedHashSet<V>(g.outNeighbours(x));
-		Collection<V> n = new LinkedHashSet<V>();
-		Collection<? extends V> h = g.outNeighbours(x);
-		if (h != null)
-			n.addAll(h);
-		n.removeAll(hide);
-		return n;
+		return shown(g.outNeighbours(x));
 	}
 
 	public boolean isDirected()
@@ -219,9 +220,164 @@ public class LocatedMaskedGraph<V,E> implements MaskedGraph<V,E>, LocatedGraph<V
 		return g.isDirected();
 	}
 
-// Private data
+	// A view of the given collection without the hidden vertices.
+
+	protected Collection<V> shown(Collection<? extends V> c)
+	{
+		return new Shown(c);
+	}
+
+// Private data and classes.
 	
 	private Graph<V,E> g = null;
 	private Set<V> hide = null;
 	private Map<V,Coord> point = null;
+
+	// The number of hidden vertices that are in the graph with the
+	// given version, or -1 if it isn't known. It is kept up to date by
+	// show() and hide(), and when the version changes it is counted
+	// again by looking at just the hidden vertices. Both are only used
+	// while holding the lock on this graph.
+
+	private int hidden = -1;
+	private long hiddenversion = -1;
+
+	private boolean hidden(Object x)
+	{
+		return x != null && hide.contains(x);
+	}
+
+	// Adds d to the count of hidden vertices in the graph for x being
+	// hidden or shown, if x is in the version of the graph counted.
+
+	private void count(V x, int d)
+	{
+		if (hidden < 0)
+			return;
+
+		if (g instanceof VersionedGraph && ((VersionedGraph<V,E>)g).version() == hiddenversion)
+		{
+			if (g.contains(x))
+				hidden += d;
+		}
+		else
+		{
+			hidden = -1;
+		}
+	}
+
+	// A view of the vertices in a collection that are not hidden.
+	// The collection is not copied, so the view changes with it.
+	// Null entries are skipped.
+
+	private class Shown extends AbstractCollection<V>
+	{
+		Shown(Collection<? extends V> c)
+		{
+			all = c == null ? Collections.<V>emptySet() : c;
+		}
+
+		public Iterator<V> iterator()
+		{
+			final Iterator<? extends V> i = all.iterator();
+
+			return new Iterator<V>()
+			{
+				public boolean hasNext()
+				{
+					while (next == null && i.hasNext())
+					{
+						V v = i.next();
+						if (v != null && !hide.contains(v))
+							next = v;
+					}
+					return next != null;
+				}
+
+				public V next()
+				{
+					if (!hasNext())
+						throw new NoSuchElementException();
+					V v = next;
+					next = null;
+					return v;
+				}
+
+				public void remove()
+				{
+					throw new UnsupportedOperationException();
+				}
+
+				private V next = null;
+			};
+		}
+
+		// When there are fewer hidden vertices than members of a set,
+		// the hidden ones in the set are counted instead.
+
+		public int size()
+		{
+			if (hide.isEmpty())
+				return all.size();
+
+			int n = 0;
+			if (all instanceof Set && hide.size() < all.size())
+			{
+				for (V v : hide)
+					if (all.contains(v))
+						n++;
+				return all.size() - n;
+			}
+
+			for (V v : all)
+				if (v != null && !hide.contains(v))
+					n++;
+			return n;
+		}
+
+		public boolean contains(Object x)
+		{
+			return !hidden(x) && all.contains(x);
+		}
+
+		protected final Collection<? extends V> all;
+	}
+
+	// The shown vertices of a versioned graph or snapshot. The size is
+	// the number of vertices less the count of hidden ones, which is
+	// kept for the version.
+
+	private class Vertices extends Shown
+	{
+		Vertices(Collection<? extends V> c, VersionedGraph<V,E> s)
+		{
+			super(c);
+			snap = s;
+		}
+
+		public int size()
+		{
+			synchronized (LocatedMaskedGraph.this)
+			{
+				long v = snap.version();
+				if (hidden < 0 || v != hiddenversion)
+				{
+					int n = 0;
+					for (V h : hide)
+						if (snap.contains(h))
+							n++;
+					hidden = n;
+					hiddenversion = v;
+				}
+				return all.size() - hidden;
+			}
+		}
+
+		public boolean contains(Object x)
+		{
+			return !hidden(x) && snap.contains(x);
+		}
+
+		private final VersionedGraph<V,E> snap;
+	}
 }
@@ -0,0 +1,622 @@
+package jpsgcs.alun.graph;
+
+import jpsgcs.alun.util.IntArray;
+import jpsgcs.alun.util.IntListReader;
+
+import java.io.IOException;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+	A graph on the integer vertices 0 to n-1 whose adjacency is kept in a
+	memory mapped file in compressed sparse row form, as made by build(),
+	rather than on the heap. The operating system pages the rows in as
+	they are read, so the graph can be much larger than the Java heap.
+	The graph cannot be changed.
+
+	The vertex and neighbour collections are views that read the file as
+	they are iterated. For layout, snapshot() gives a CSRGraph that reads
+	the rows from the file too, and ArrayLocatedGraph uses this in place
+	of building one through the Graph interface. Only the list of vertex
+	ids, 4 bytes per vertex, is kept on the heap.
+
+	The coordinates of the vertices can be kept in a second mapped file,
+	holding the n x coordinates followed by the n y coordinates, so that
+	a layout can be saved and taken up again.
+
+	Each of the three sets of rows of a directed graph, and the one
+	set of an undirected graph, must have fewer than 2^31 entries.
+*/
+
+public class MappedGraph implements VersionedGraph<Integer,Object>
+{
+/**
+	Opens a graph file made by build(), with no coordinate file.
+*/
+	public MappedGraph(String graphfile) throws IOException
+	{
+		this(graphfile,null);
+	}
+
+/**
+	Opens a graph file made by build(), and the given coordinate file.
+	If the coordinate file does not exist it is made, with all
+	coordinates 0.
+*/
+	public MappedGraph(String graphfile, String coordfile) throws IOException
+	{
+		RandomAccessFile f = new RandomAccessFile(graphfile,"r");
+		try
+		{
+			FileChannel c = f.getChannel();
+			IntBuffer h = c.map(FileChannel.MapMode.READ_ONLY,0,HEADER).asIntBuffer();
+			if (h.get(0) != MAGIC || h.get(1) != FORMAT)
+				throw new IOException(graphfile+" is not a mapped graph file");
+
+			directed = h.get(2) != 0;
+			n = h.get(3);
+
+			long pos = HEADER;
+			offsets = map(c,pos,n+1);
+			pos += 4L*(n+1);
+			targets = map(c,pos,h.get(4));
+			pos += 4L*h.get(4);
+
+			if (directed)
+			{
+				inOffsets = map(c,pos,n+1);
+				pos += 4L*(n+1);
+				inTargets = map(c,pos,h.get(5));
+				pos += 4L*h.get(5);
+				outOffsets = map(c,pos,n+1);
+				pos += 4L*(n+1);
+				outTargets = map(c,pos,h.get(6));
+			}
+			else
+			{
+				inOffsets = outOffsets = offsets;
+				inTargets = outTargets = targets;
+			}
+		}
+		finally
+		{
+			f.close();
+		}
+
+		if (coordfile != null)
+		{
+			RandomAccessFile g = new RandomAccessFile(coordfile,"rw");
+			try
+			{
+				MappedByteBuffer b = g.getChannel().map(FileChannel.MapMode.READ_WRITE,0,16L*n);
+				coords = b;
+				xy = b.asDoubleBuffer();
+			}
+			finally
+			{
+				g.close();
+			}
+		}
+	}
+
+/**
+	Reads an edge list, or more generally an adjacency list in which
+	the first integer on each line is connected to each of the others,
+	and writes the graph file. The edge list may be gzipped. The vertices
+	are numbered from 0 to the largest number read, including numbers
+	that are alone on a line. Self loops are left out. The edge list is read twice, first to count
+	the degrees and then to fill the rows, so only a few ints per vertex
+	are kept on the heap. Repeated edges are not merged.
+*/
+	public static void build(String edgefile, String graphfile, boolean directed) throws IOException
+	{
+		// Count the vertices and the in and out degrees.
+
+		int[] din = new int[16];
+		int[] dout = new int[16];
+		int n = 0;
+
+		EdgeReader r = new EdgeReader(edgefile);
+		while (r.next())
+		{
+			int max = Math.max(r.from,r.to);
+			if (r.from < 0 || r.to < 0)
+				throw new IOException("Negative vertex number in "+edgefile);
+			if (max >= din.length)
+			{
+				din = grow(din,max);
+				dout = grow(dout,max);
+			}
+			n = Math.max(n,max+1);
+			if (r.from != r.to)
+			{
+				dout[r.from]++;
+				din[r.to]++;
+			}
+		}
+		r.close();
+
+		if (r.low < 0)
+			throw new IOException("Negative vertex number in "+edgefile);
+		if (r.high >= din.length)
+		{
+			din = grow(din,r.high);
+			dout = grow(dout,r.high);
+		}
+		n = Math.max(n,r.high+1);
+
+		if (!directed)
+			for (int i=0; i<n; i++)
+				dout[i] = din[i] = din[i] + dout[i];
+
+		// Lay out the file.
+
+		long mout = 0;
+		long min = 0;
+		for (int i=0; i<n; i++)
+		{
+			mout += dout[i];
+			min += din[i];
+		}
+		if (mout >= Integer.MAX_VALUE || min >= Integer.MAX_VALUE)
+			throw new IOException("Too many edges for a mapped graph");
+
+		new File(graphfile).delete();
+		RandomAccessFile f = new RandomAccessFile(graphfile,"rw");
+		try
+		{
+			FileChannel c = f.getChannel();
+
+			if (!directed)
+			{
+				IntBuffer off = map(c,HEADER,n+1,FileChannel.MapMode.READ_WRITE);
+				IntBuffer tar = map(c,HEADER+4L*(n+1),(int)mout,FileChannel.MapMode.READ_WRITE);
+				fill(edgefile,n,dout,off,tar,false,false);
+				header(c,false,n,(int)mout,0,0);
+				return;
+			}
+
+			long pos = HEADER;
+			long all = pos;
+			pos += 4L*(n+1);
+
+			// The rows of all neighbours are filled last, when the number
+			// of them is known, so leave room for as many as there can be.
+
+			long allt = pos;
+			pos += 4L*(mout+min);
+			long ino = pos;
+			pos += 4L*(n+1);
+			long int0 = pos;
+			pos += 4L*min;
+			long outo = pos;
+			pos += 4L*(n+1);
+			long outt = pos;
+
+			IntBuffer io = map(c,ino,n+1,FileChannel.MapMode.READ_WRITE);
+			IntBuffer it = map(c,int0,(int)min,FileChannel.MapMode.READ_WRITE);
+			IntBuffer oo = map(c,outo,n+1,FileChannel.MapMode.READ_WRITE);
+			IntBuffer ot = map(c,outt,(int)mout,FileChannel.MapMode.READ_WRITE);
+			fill(edgefile,n,din,io,it,true,true);
+			fill(edgefile,n,dout,oo,ot,true,false);
+
+			// Merge the in and out rows, leaving out repeats, into the
+			// all rows, then move the in and out sections down to close
+			// the gap left.
+
+			IntBuffer ao = map(c,all,n+1,FileChannel.MapMode.READ_WRITE);
+			IntBuffer at = map(c,allt,(int)(mout+min),FileChannel.MapMode.READ_WRITE);
+			int[] mark = new int[n];
+			int k = 0;
+			for (int i=0; i<n; i++)
+			{
+				ao.put(i,k);
+				for (int e=oo.get(i); e<oo.get(i+1); e++)
+					if (mark[ot.get(e)] != i+1)
+					{
+						mark[ot.get(e)] = i+1;
+						at.put(k++,ot.get(e));
+					}
+				for (int e=io.get(i); e<io.get(i+1); e++)
+					if (mark[it.get(e)] != i+1)
+					{
+						mark[it.get(e)] = i+1;
+						at.put(k++,it.get(e));
+					}
+			}
+			ao.put(n,k);
+
+			long gap = 4L*(mout+min-k);
+			if (gap > 0)
+			{
+				long from = ino;
+				long end = outt + 4L*mout;
+				ByteBuffer b = ByteBuffer.allocate(1<<20);
+				while (from < end)
+				{
+					b.clear();
+					b.limit((int)Math.min(b.capacity(),end-from));
+					c.read(b,from);
+					b.flip();
+					c.write(b,from-gap);
+					from += b.limit();
+				}
+				c.truncate(end-gap);
+			}
+
+			header(c,true,n,k,(int)min,(int)mout);
+		}
+		finally
+		{
+			f.close();
+		}
+	}
+
+/**
+	Returns the graph as a CSRGraph with vertex ids 0 to n-1 that reads
+	its rows from the file. It is made once and then kept.
+*/
+	synchronized public CSRGraph snapshot()
+	{
+		if (csr == null)
+		{
+			int[] v = new int[n];
+			for (int i=0; i<n; i++)
+				v[i] = i;
+
+			csr = new CSRGraph(v,directed,offsets,targets,inOffsets,inTargets,outOffsets,outTargets);
+		}
+		return csr;
+	}
+
+/**
+	Returns true if there is a coordinate file.
+*/
+	public boolean hasCoords()
+	{
+		return xy != null;
+	}
+
+	public double getX(int i)
+	{
+		return xy.get(i);
+	}
+
+	public double getY(int i)
+	{
+		return xy.get(n+i);
+	}
+
+	public void setCoord(int i, double x, double y)
+	{
+		xy.put(i,x);
+		xy.put(n+i,y);
+	}
+
+/**
+	Copies the coordinates from the coordinate file into a located
+	graph made on this one, straight into its layout arrays.
+*/
+	public void getCoords(ArrayLocatedGraph<Integer,Object> g)
+	{
+		DoubleBuffer d = xy.duplicate();
+		d.position(0);
+		g.setCoords(n,d);
+	}
+
+/**
+	Copies the coordinates from a located graph made on this one into
+	the coordinate file, straight from its layout arrays, and forces
+	them out to the disk.
+*/
+	public void putCoords(ArrayLocatedGraph<Integer,Object> g)
+	{
+		DoubleBuffer d = xy.duplicate();
+		d.position(0);
+		g.getCoords(n,d);
+		coords.force();
+	}
+
+/**
+	Returns a view of the coordinate file from its start, or null if
+	there is no file or it holds only zeros, as it does when it is new.
+*/
+	public DoubleBuffer savedCoords()
+	{
+		if (xy == null)
+			return null;
+
+		DoubleBuffer d = xy.duplicate();
+		d.position(0);
+		for (int i=0; i<2*n; i++)
+			if (d.get(i) != 0)
+				return d;
+		return null;
+	}
+
+// Graph interface
+
+	public boolean contains(Object x)
+	{
+		return id(x) >= 0;
+	}
+
+	public boolean connects(Object x, Object y)
+	{
+		int i = id(x);
+		int j = id(y);
+		if (i < 0 || j < 0)
+			return false;
+		for (int e=outOffsets.get(i); e<outOffsets.get(i+1); e++)
+			if (outTargets.get(e) == j)
+				return true;
+		return false;
+	}
+
+	public Object connection(Object x, Object y)
+	{
+		return null;
+	}
+
+	public Collection<Object> connections(Object x)
+	{
+		int i = id(x);
+		return i < 0 ? null : Collections.nCopies(outOffsets.get(i+1)-outOffsets.get(i),null);
+	}
+
+	public Collection<Integer> getVertices()
+	{
+		return new AbstractCollection<Integer>()
+		{
+			public Iterator<Integer> iterator()
+			{
+				return new Iterator<Integer>()
+				{
+					public boolean hasNext()
+					{
+						return i < n;
+					}
+
+					public Integer next()
+					{
+						if (i >= n)
+							throw new NoSuchElementException();
+						return i++;
+					}
+
+					public void remove()
+					{
+						throw new UnsupportedOperationException();
+					}
+
+					private int i = 0;
+				};
+			}
+
+			public int size()
+			{
+				return n;
+			}
+
+			public boolean contains(Object x)
+			{
+				return id(x) >= 0;
+			}
+		};
+	}
+
+	public Collection<Integer> getNeighbours(Object x)
+	{
+		return row(x,offsets,targets);
+	}
+
+	public Collection<Integer> inNeighbours(Object x)
+	{
+		return row(x,inOffsets,inTargets);
+	}
+
+	public Collection<Integer> outNeighbours(Object x)
+	{
+		return row(x,outOffsets,outTargets);
+	}
+
+	public boolean isDirected()
+	{
+		return directed;
+	}
+
+	public long version()
+	{
+		return 0;
+	}
+
+	public int size()
+	{
+		return n;
+	}
+
+// Private data and methods.
+
+	private static final int MAGIC = 0x5256474d;
+	private static final int FORMAT = 1;
+	private static final int HEADER = 32;
+
+	private boolean directed = false;
+	private int n = 0;
+	private IntBuffer offsets = null;
+	private IntBuffer targets = null;
+	private IntBuffer inOffsets = null;
+	private IntBuffer inTargets = null;
+	private IntBuffer outOffsets = null;
+	private IntBuffer outTargets = null;
+	private MappedByteBuffer coords = null;
+	private DoubleBuffer xy = null;
+	private CSRGraph csr = null;
+
+	private int id(Object x)
+	{
+		if (!(x instanceof Integer))
+			return -1;
+		int i = (Integer) x;
+		return i >= 0 && i < n ? i : -1;
+	}
+
+	// A view of the row for x, read from the file as it is iterated.
+
+	private Collection<Integer> row(Object x, final IntBuffer off, final IntBuffer tar)
+	{
+		int i = id(x);
+		if (i < 0)
+			return null;
+
+		final int a = off.get(i);
+		final int b = off.get(i+1);
+
+		return new AbstractCollection<Integer>()
+		{
+			public Iterator<Integer> iterator()
+			{
+				return new Iterator<Integer>()
+				{
+					public boolean hasNext()
+					{
+						return e < b;
+					}
+
+					public Integer next()
+					{
+						if (e >= b)
+							throw new NoSuchElementException();
+						return tar.get(e++);
+					}
+
+					public void remove()
+					{
+						throw new UnsupportedOperationException();
+					}
+
+					private int e = a;
+				};
+			}
+
+			public int size()
+			{
+				return b-a;
+			}
+		};
+	}
+
+	private static IntBuffer map(FileChannel c, long pos, int k) throws IOException
+	{
+		return map(c,pos,k,FileChannel.MapMode.READ_ONLY);
+	}
+
+	private static IntBuffer map(FileChannel c, long pos, int k, FileChannel.MapMode mode) throws IOException
+	{
+		return c.map(mode,pos,4L*k).asIntBuffer();
+	}
+
+	private static int[] grow(int[] a, int max)
+	{
+		int[] b = new int[Math.max(2*a.length,max+1)];
+		System.arraycopy(a,0,b,0,a.length);
+		return b;
+	}
+
+	private static void header(FileChannel c, boolean directed, int n, int m, int min, int mout) throws IOException
+	{
+		IntBuffer h = map(c,0,HEADER/4,FileChannel.MapMode.READ_WRITE);
+		h.put(0,MAGIC);
+		h.put(1,FORMAT);
+		h.put(2,directed ? 1 : 0);
+		h.put(3,n);
+		h.put(4,m);
+		h.put(5,min);
+		h.put(6,mout);
+	}
+
+	// Sets the offsets from the degrees, then reads the edges again and puts
+	// each into its row. For directed graphs the rows are either the in or
+	// the out neighbours, otherwise both ends go into each other's rows.
+
+	private static void fill(String edgefile, int n, int[] deg, IntBuffer off, IntBuffer tar, boolean directed, boolean in) throws IOException
+	{
+		int[] pos = new int[n];
+		int k = 0;
+		for (int i=0; i<n; i++)
+		{
+			off.put(i,k);
+			pos[i] = k;
+			k += deg[i];
+		}
+		off.put(n,k);
+
+		EdgeReader r = new EdgeReader(edgefile);
+		while (r.next())
+		{
+			if (r.from == r.to)
+				continue;
+
+			if (!directed || !in)
+				tar.put(pos[r.from]++,r.to);
+			if (!directed || in)
+				tar.put(pos[r.to]++,r.from);
+		}
+		r.close();
+	}
+
+	// Gives the edges of an adjacency list file one at a time.
+
+	private static class EdgeReader
+	{
+		EdgeReader(String file) throws IOException
+		{
+			in = new IntListReader(file);
+		}
+
+		boolean next() throws IOException
+		{
+			while (k >= line.size())
+			{
+				if (!in.nextLine(line))
+					return false;
+				k = 1;
+				if (line.size() > 0)
+				{
+					low = Math.min(low,line.get(0));
+					high = Math.max(high,line.get(0));
+				}
+			}
+			from = line.get(0);
+			to = line.get(k++);
+			return true;
+		}
+
+		void close() throws IOException
+		{
+			in.close();
+		}
+
+		int from = 0;
+		int to = 0;
+
+		// The least and greatest first numbers of the lines read.
+
+		int low = 0;
+		int high = -1;
+
+		private IntListReader in = null;
+		private IntArray line = new IntArray();
+		private int k = 0;
+	}
+}
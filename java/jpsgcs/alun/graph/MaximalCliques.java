@@ -0,0 +1,201 @@
+package jpsgcs.alun.graph;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.LinkedHashSet;
+
+/**
+	Finds the maximal cliques of a graph using the Bron-Kerbosch algorithm
+	with the pivoting rule of Tomita, Tanaka and Takahashi, "The worst-case
+	time complexity for generating all maximal cliques and computational
+	experiments", Theoretical Computer Science, 2006.
+
+	The adjacency of the graph and the candidate and excluded sets of
+	the search are kept as long[] bitsets over vertex ids 0 to n-1, so
+	each step of the search is a few passes of word wide ands and bit
+	counts. The adjacency matrix takes n*n/8 bytes, which suits the dense
+	subgraphs that are left when triangulation does not split a graph,
+	rather than whole sparse graphs.
+
+	The cliques are passed to a Visitor as they are found, so they
+	need not all be held at once. The graph is treated as undirected
+	and self loops are ignored.
+*/
+
+public class MaximalCliques<V>
+{
+/**
+	An object that is given each maximal clique as it is found.
+*/
+	public interface Visitor<V>
+	{
+		public void visit(Set<V> clique);
+	}
+
+/**
+	Makes the bitset adjacency for the given graph. Later changes to
+	the graph are not seen.
+*/
+	public <E> MaximalCliques(Graph<V,E> g)
+	{
+		v = new ArrayList<V>(g.getVertices());
+		n = v.size();
+		w = (n+63) >>> 6;
+
+		CSRGraph s = CSRGraph.make(g);
+		adj = new long[n][w];
+		for (int i=0; i<n; i++)
+			for (int e=s.offsets[i]; e<s.offsets[i+1]; e++)
+				adj[i][s.targets[e] >>> 6] |= 1L << s.targets[e];
+	}
+
+/**
+	Passes each maximal clique of the graph to the visitor.
+*/
+	public void find(Visitor<V> visitor)
+	{
+		find(n+1,visitor);
+	}
+
+/**
+	Passes each maximal clique of the graph that has at most max
+	vertices to the visitor. Larger cliques are left out, and the
+	search does not go beyond max vertices, so a small max also
+	bounds the time taken.
+*/
+	public void find(int max, Visitor<V> visitor)
+	{
+		if (n == 0 || max < 1)
+			return;
+
+		int depth = Math.min(max,n) + 1;
+		p = new long[depth][w];
+		x = new long[depth][w];
+		r = new int[depth];
+		this.max = max;
+		this.visitor = visitor;
+
+		for (int i=0; i<n; i++)
+			p[0][i >>> 6] |= 1L << i;
+
+		expand(0);
+
+		this.visitor = null;
+	}
+
+/**
+	Returns the number of vertices.
+*/
+	public int size()
+	{
+		return n;
+	}
+
+// Private data and methods.
+
+	private List<V> v = null;
+	private int n = 0;
+	private int w = 0;
+	private long[][] adj = null;
+
+	private long[][] p = null;
+	private long[][] x = null;
+	private int[] r = null;
+	private int max = 0;
+	private Visitor<V> visitor = null;
+
+	// Extends the clique r[0..d-1] by each candidate in p[d] that is not
+	// a neighbour of the pivot. The pivot is the vertex of p[d] or x[d]
+	// with most neighbours in p[d].
+
+	private void expand(int d)
+	{
+		long[] P = p[d];
+		long[] X = x[d];
+
+		if (empty(P))
+		{
+			if (empty(X))
+				report(d);
+			return;
+		}
+
+		if (d == max)
+			return;
+
+		int u = pivot(P,X);
+		long[] U = adj[u];
+		long[] P1 = p[d+1];
+		long[] X1 = x[d+1];
+
+		for (int k=0; k<w; k++)
+		{
+			long b = P[k] & ~U[k];
+
+			while (b != 0)
+			{
+				int i = (k << 6) + Long.numberOfTrailingZeros(b);
+				b &= b-1;
+
+				long[] N = adj[i];
+				for (int j=0; j<w; j++)
+				{
+					P1[j] = P[j] & N[j];
+					X1[j] = X[j] & N[j];
+				}
+
+				r[d] = i;
+				expand(d+1);
+
+				P[k] &= ~(1L << i);
+				X[k] |= 1L << i;
+			}
+		}
+	}
+
+	private int pivot(long[] P, long[] X)
+	{
+		int best = -1;
+		int most = -1;
+
+		for (int k=0; k<w; k++)
+		{
+			long b = P[k] | X[k];
+			while (b != 0)
+			{
+				int i = (k << 6) + Long.numberOfTrailingZeros(b);
+				b &= b-1;
+
+				long[] N = adj[i];
+				int c = 0;
+				for (int j=0; j<w; j++)
+					c += Long.bitCount(P[j] & N[j]);
+
+				if (c > most)
+				{
+					most = c;
+					best = i;
+				}
+			}
+		}
+
+		return best;
+	}
+
+	private boolean empty(long[] b)
+	{
+		for (int k=0; k<w; k++)
+			if (b[k] != 0)
+				return false;
+		return true;
+	}
+
+	private void report(int d)
+	{
+		Set<V> c = new LinkedHashSet<V>();
+		for (int k=0; k<d; k++)
+			c.add(v.get(r[k]));
+		visitor.visit(c);
+	}
+}
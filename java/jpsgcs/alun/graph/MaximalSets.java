@@ -0,0 +1,258 @@
+package jpsgcs.alun.graph;
+
+import java.util.Set;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+	Collects sets, such as the cliques found in the parts of a graph,
+	and returns those that are not contained in any other.
+	Sets can be added from many threads at once.
+
+	Each set is filed under each of its elements. To test whether a set
+	is contained in another, only the bigger sets filed under its least
+	common element are looked at, instead of every set found so far.
+	Equal sets are only kept once.
+
+	Each set has a key that orders it among the sets of the same size
+	when they are returned. Sets passed to a visitor from part(i) are
+	keyed by i and then by the order in which that visitor was given
+	them, so if each part is worked on by one thread at a time, the
+	result is the same however the parts are shared among threads.
+	Of equal sets, the one with the smallest key is kept.
+*/
+
+public class MaximalSets<V> implements MaximalCliques.Visitor<V>
+{
+/**
+	Adds a set and returns true, or returns false if an equal set has
+	already been added. The set should not be changed afterwards.
+	The key is the number of sets added by this method before it.
+*/
+	public boolean add(Set<V> s)
+	{
+		return add(s,count.getAndIncrement());
+	}
+
+/**
+	Adds a set with the given key and returns true, or returns false if
+	an equal set has already been added, in which case the one with the
+	smaller key is kept. The set should not be changed afterwards.
+*/
+	public boolean add(Set<V> s, long key)
+	{
+		Keyed<V> k = new Keyed<V>(s,key);
+		Keyed<V> old = all.putIfAbsent(s,k);
+
+		if (old != null)
+		{
+			while (old != null && key < old.key && !all.replace(s,old,k))
+				old = all.get(s);
+			return false;
+		}
+
+		for (V v : s)
+		{
+			List<Set<V>> l = index.get(v);
+			if (l == null)
+			{
+				List<Set<V>> m = new ArrayList<Set<V>>();
+				l = index.putIfAbsent(v,m);
+				if (l == null)
+					l = m;
+			}
+
+			synchronized (l)
+			{
+				l.add(s);
+			}
+		}
+
+		return true;
+	}
+
+	public void visit(Set<V> s)
+	{
+		add(s);
+	}
+
+/**
+	Returns a visitor that adds the sets it is given with keys that put
+	them after those of any part numbered less than i, and in the order
+	given among those of part i. It should only be used by one thread
+	at a time.
+*/
+	public MaximalCliques.Visitor<V> part(final int i)
+	{
+		return new MaximalCliques.Visitor<V>()
+		{
+			public void visit(Set<V> s)
+			{
+				add(s,((long)i << 32) + j++);
+			}
+
+			private long j = 0;
+		};
+	}
+
+/**
+	Returns the number of distinct sets added.
+*/
+	public int size()
+	{
+		return all.size();
+	}
+
+/**
+	Returns true if no other set that has been added contains s.
+	This should not be called while sets are still being added.
+*/
+	public boolean isMaximal(Set<V> s)
+	{
+		sort(null);
+		return test(s);
+	}
+
+/**
+	Returns the sets that are not contained in any other, biggest first,
+	and in order of their keys when the size is the same.
+*/
+	public Set<Set<V>> maximal()
+	{
+		return maximal(null);
+	}
+
+/**
+	As maximal(), but the sets are tested in parallel in the given
+	pool. A null pool tests them in this thread.
+*/
+	public Set<Set<V>> maximal(ForkJoinPool pool)
+	{
+		sort(pool);
+
+		final List<Keyed<V>> a = new ArrayList<Keyed<V>>(all.values());
+		final boolean[] keep = new boolean[a.size()];
+
+		ForEach.Body body = new ForEach.Body()
+		{
+			public void run(int i)
+			{
+				keep[i] = test(a.get(i).set);
+			}
+		};
+
+		if (pool == null)
+		{
+			for (int i=0; i<keep.length; i++)
+				body.run(i);
+		}
+		else
+		{
+			pool.invoke(new ForEach(body,0,keep.length,256));
+		}
+
+		List<Keyed<V>> b = new ArrayList<Keyed<V>>();
+		for (int i=0; i<keep.length; i++)
+			if (keep[i])
+				b.add(a.get(i));
+
+		Collections.sort(b);
+
+		Set<Set<V>> res = new LinkedHashSet<Set<V>>();
+		for (Keyed<V> k : b)
+			res.add(k.set);
+		return res;
+	}
+
+// Private data and methods.
+
+	private ConcurrentHashMap<Set<V>,Keyed<V>> all = new ConcurrentHashMap<Set<V>,Keyed<V>>();
+	private AtomicLong count = new AtomicLong(0);
+	private ConcurrentHashMap<V,List<Set<V>>> index = new ConcurrentHashMap<V,List<Set<V>>>();
+	private int sorted = -1;
+
+	// Sorts the sets filed under each element biggest first, so that
+	// test() can stop at the first set that is no bigger than the one
+	// it is testing. Only done again if sets have been added since.
+
+	private synchronized void sort(ForkJoinPool pool)
+	{
+		if (sorted == all.size())
+			return;
+
+		final List<List<Set<V>>> l = new ArrayList<List<Set<V>>>(index.values());
+		final BiggestSet big = new BiggestSet();
+
+		ForEach.Body body = new ForEach.Body()
+		{
+			public void run(int i)
+			{
+				Collections.sort(l.get(i),big);
+			}
+		};
+
+		if (pool == null)
+		{
+			for (int i=0; i<l.size(); i++)
+				body.run(i);
+		}
+		else
+		{
+			pool.invoke(new ForEach(body,0,l.size(),64));
+		}
+
+		sorted = all.size();
+	}
+
+	private boolean test(Set<V> s)
+	{
+		List<Set<V>> least = null;
+		for (V v : s)
+		{
+			List<Set<V>> l = index.get(v);
+			if (l == null)
+				return true;
+			if (least == null || l.size() < least.size())
+				least = l;
+		}
+
+		if (least == null)
+			return s.isEmpty() && all.size() <= 1;
+
+		for (Set<V> t : least)
+		{
+			if (t.size() <= s.size())
+				break;
+			if (t.containsAll(s))
+				return false;
+		}
+
+		return true;
+	}
+
+	// A set with its key, ordered biggest set first and then by key.
+
+	private static class Keyed<V> implements Comparable<Keyed<V>>
+	{
+		Keyed(Set<V> s, long k)
+		{
+			set = s;
+			key = k;
+		}
+
+		public int compareTo(Keyed<V> k)
+		{
+			if (set.size() != k.set.size())
+				return set.size() > k.set.size() ? -1 : 1;
+			return key < k.key ? -1 : ( key > k.key ? 1 : 0 );
+		}
+
+		private Set<V> set = null;
+		private long key = 0;
+	}
+}
@@ -0,0 +1,283 @@
+package jpsgcs.alun.graph;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+	Lays out a graph from scratch by the multilevel method.
+	The graph is coarsened repeatedly by merging each vertex with
+	a neighbour that has not yet been merged, until it is small or
+	stops getting smaller. The coarsest graph is laid out from a random
+	start, and then the positions are passed down a level at a time,
+	each vertex starting where the vertex it was merged into ended up,
+	and refined by further sweeps.
+
+	The sweeps at every level use the forces of the given locator,
+	so that the final layout looks the same as one made by the locator
+	alone, but the large scale structure is found on the small graphs
+	where sweeps are cheap. Only locators that implement the forces()
+	hook, namely LocalLocator, RootedLocalLocator and DAGLocator, can
+	be used on the coarse levels. For others, layout() just makes sweeps
+	of the whole graph.
+*/
+
+public class MultilevelLayout<V,E>
+{
+	public MultilevelLayout(GraphLocator<V,E> locator)
+	{
+		loc = locator;
+	}
+
+/**
+	Sets the most sweeps made at each level.
+*/
+	public void setSweeps(int n)
+	{
+		sweeps = n;
+	}
+
+/**
+	Sets the mean squared step size per vertex below which the sweeps
+	at a level stop.
+*/
+	public void setThreshold(double t)
+	{
+		threshold = t;
+	}
+
+/**
+	Sets the size below which the graph is not coarsened any further.
+*/
+	public void setMinimumSize(int n)
+	{
+		minsize = n;
+	}
+
+/**
+	Lays out the shown vertices of the graph, and returns the sum of
+	the squared step sizes in the last sweep. Vertices that are not
+	moveable are left where they are.
+*/
+	public double layout(LocatedGraph<V,E> g)
+	{
+		if (g instanceof ArrayLocatedGraph)
+		{
+			ArrayLocatedGraph<V,E> a = (ArrayLocatedGraph<V,E>) g;
+			CSRGraph s = a.snapshot();
+			if (s == null)
+				return 0;
+
+			a.sync();
+			CoordArray c = a.coords();
+			double delta = layout(s,c.x,c.y,c.m);
+			a.sync();
+			return delta;
+		}
+
+		Collection<V> vertices = g.getVertices();
+		if (vertices == null)
+			return 0;
+
+		List<V> v = new ArrayList<V>(vertices);
+		Map<V,Integer> index = new HashMap<V,Integer>();
+		for (V u : v)
+			index.put(u,index.size());
+
+		CSRGraph s = CSRGraph.make(g,v,index,v.size());
+		double[] x = new double[v.size()];
+		double[] y = new double[v.size()];
+		BitSet m = new BitSet();
+
+		for (int i=0; i<v.size(); i++)
+		{
+			Coord p = g.getCoord(v.get(i));
+			x[i] = p.x;
+			y[i] = p.y;
+			m.set(i,p.m);
+		}
+
+		double delta = layout(s,x,y,m);
+
+		for (int i=0; i<v.size(); i++)
+		{
+			Coord p = g.getCoord(v.get(i));
+			if (p.m)
+			{
+				p.x = x[i];
+				p.y = y[i];
+			}
+		}
+
+		return delta;
+	}
+
+/**
+	Lays out the graph given as a snapshot, with positions and moveable
+	flags indexed by its vertex ids.
+*/
+	public double layout(CSRGraph s, double[] x, double[] y, BitSet m)
+	{
+		if (!loc.hasForces())
+			return refine(s,x,y,m);
+
+		// Coarsen.
+
+		List<CSRGraph> graphs = new ArrayList<CSRGraph>();
+		List<int[]> maps = new ArrayList<int[]>();
+		graphs.add(s);
+
+		CSRGraph g = s;
+		while (g.size() > minsize && graphs.size() < 50)
+		{
+			int[] map = new int[g.ids()];
+			int n = match(g,map);
+			if (n > 0.9 * g.size())
+				break;
+
+			g = g.contract(map,n);
+			graphs.add(g);
+			maps.add(map);
+		}
+
+		// Lay out the coarsest graph from a random start.
+
+		BitSet all = new BitSet();
+		all.set(0,g.size());
+
+		loc.prepare();
+		double r = loc.radius();
+		if (r < Double.MIN_VALUE)
+			r = 100;
+
+		double[] cx = new double[g.size()];
+		double[] cy = new double[g.size()];
+		double side = r * Math.sqrt(g.size());
+		for (int i=0; i<cx.length; i++)
+		{
+			cx[i] = side * (GraphLocator.randu() - 0.5);
+			cy[i] = side * (GraphLocator.randu() - 0.5);
+		}
+
+		if (graphs.size() == 1)
+		{
+			place(s,x,y,m,cx,cy,null,1,r);
+			return refine(s,x,y,m);
+		}
+
+		refine(g,cx,cy,all);
+
+		// Pass the positions down, scaling them up by the
+		// square root of the ratio of the sizes so that the
+		// density stays about the same, and refine.
+
+		for (int l = graphs.size()-2; l >= 0; l--)
+		{
+			CSRGraph f = graphs.get(l);
+			int[] map = maps.get(l);
+			double scale = Math.sqrt(f.size() / (double) graphs.get(l+1).size());
+
+			if (l == 0)
+			{
+				place(f,x,y,m,cx,cy,map,scale,r);
+				return refine(f,x,y,m);
+			}
+
+			double[] fx = new double[f.size()];
+			double[] fy = new double[f.size()];
+			all.set(0,f.size());
+			place(f,fx,fy,all,cx,cy,map,scale,r);
+			refine(f,fx,fy,all);
+			cx = fx;
+			cy = fy;
+		}
+
+		return 0;
+	}
+
+// Private data and methods.
+
+	private GraphLocator<V,E> loc = null;
+	private int sweeps = 100;
+	private double threshold = 0.01;
+	private int minsize = 50;
+
+	// Makes sweeps of the graph until the steps are small.
+
+	private double refine(CSRGraph s, double[] x, double[] y, BitSet m)
+	{
+		double delta = 0;
+		for (int k=0; k<sweeps; k++)
+		{
+			delta = loc.isParallel() ? loc.parallelSweep(s,x,y,m) : loc.sweep(s,x,y,m);
+			if (delta < threshold * s.size())
+				break;
+		}
+		return delta;
+	}
+
+	// Puts each moveable vertex of the fine graph where the vertex it
+	// was merged into is in the coarse graph, scaled, plus a small random
+	// offset so that merged vertices do not start on top of each other.
+
+	private void place(CSRGraph f, double[] x, double[] y, BitSet m, double[] cx, double[] cy, int[] map, double scale, double r)
+	{
+		double jitter = 0.1 * r;
+		for (int k=0; k<f.vertices.length; k++)
+		{
+			int i = f.vertices[k];
+			if (!m.get(i))
+				continue;
+
+			int c = map == null ? k : map[i];
+			x[i] = scale * cx[c] + jitter * (GraphLocator.randu() - 0.5);
+			y[i] = scale * cy[c] + jitter * (GraphLocator.randu() - 0.5);
+		}
+	}
+
+	// Merges each unmatched vertex, taken in a random order, with the
+	// unmatched neighbour of least degree, if there is one. Puts the
+	// number of the merged vertex into map[] and returns how many
+	// merged vertices there are.
+
+	private int match(CSRGraph g, int[] map)
+	{
+		int[] order = g.vertices.clone();
+		for (int k=order.length-1; k>0; k--)
+		{
+			int j = (int)(GraphLocator.randu() * (k+1));
+			int t = order[j];
+			order[j] = order[k];
+			order[k] = t;
+		}
+
+		for (int k=0; k<order.length; k++)
+			map[order[k]] = -1;
+
+		int n = 0;
+		for (int k=0; k<order.length; k++)
+		{
+			int i = order[k];
+			if (map[i] >= 0)
+				continue;
+
+			int best = -1;
+			for (int e=g.offset(i), f=g.offset(i+1); e<f; e++)
+			{
+				int j = g.target(e);
+				if (map[j] < 0 && (best < 0 || g.degree(j) < g.degree(best)))
+					best = j;
+			}
+
+			map[i] = n;
+			if (best >= 0)
+				map[best] = n;
+			n++;
+		}
+
+		return n;
+	}
+}
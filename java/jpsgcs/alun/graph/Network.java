@@ -19,7 +19,7 @@ import java.util.Iterator;
 	edges.
 */
 
-public class Network<V,E> extends GraphSkeleton<V,E> implements MutableGraph<V,E>
+public class Network<V,E> extends GraphSkeleton<V,E> implements MutableGraph<V,E>, VersionedGraph<V,E>
 {
 	// Implement GraphSkeleton abstract method.
 
@@ -34,6 +34,14 @@ public class Network<V,E> extends GraphSkeleton<V,E> implements MutableGraph<V,E
 		return new LinkedHashMap<V,E>();
 	}
 
+	protected Map<V,E> makeMap(int n)
+	{
+		if (identity || sorted)
+			return makeMap();
+
+		return new LinkedHashMap<V,E>(capacity(n));
+	}
+
 	public Network(boolean directed, boolean identity, boolean sorted)
 	{
 		this.identity = identity;
@@ -84,6 +92,11 @@ public class Network<V,E> extends GraphSkeleton<V,E> implements MutableGraph<V,E
 	private boolean identity = false;
 	private boolean sorted = false;
 
+	private static int capacity(int n)
+	{
+		return Math.max(16, (int)(n/0.75f) + 1);
+	}
+
 // Extra methods 
 
 	public boolean isIdentity()
@@ -119,6 +132,21 @@ public class Network<V,E> extends GraphSkeleton<V,E> implements MutableGraph<V,E
 	}
 */
 
+/**
+	Makes room for n vertices so that adding them does not make the
+	vertex map grow step by step. This only has effect while the graph
+	is empty, and only for graphs that are neither identity nor sorted.
+*/
+	public void reserve(int n)
+	{
+		if (identity || sorted || !f.isEmpty())
+			return;
+
+		boolean directed = isDirected();
+		f = new LinkedHashMap<V,Map<V,E>>(capacity(n));
+		b = ( directed ? new LinkedHashMap<V,Map<V,E>>(capacity(n)) : f );
+	}
+
 	public Map<V,E> neighbourMap(Object x)
 	{
 		return f.get(x);
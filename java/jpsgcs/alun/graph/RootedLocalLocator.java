@@ -1,58 +1,89 @@
 package jpsgcs.alun.graph;
 
-import jpsgcs.alun.util.RadixPlaneSorter;
+import jpsgcs.alun.util.UniformGrid;
+import jpsgcs.alun.util.IntArray;
 import java.util.Collection;
-import java.util.LinkedHashSet;
 
 public class RootedLocalLocator<V,E> extends LocalLocator<V,E>
 {
 	public double move(LocatedGraph<V,E> g)
 	{
+		if (g instanceof ArrayLocatedGraph)
+			return move((ArrayLocatedGraph<V,E>)g);
+
 		double delta = 0;
 		double d = par[0].getValue();
 		double gamma = d*d;
 		double alpha = 2*d;
 		
-		
-		//Collection<V> vertices = new LinkedHashSet<V>(g.getVertices());
 		Collection<V> vertices = g.getVertices();
 		if (vertices == null)
-			return 0;
+			return delta;
+
+		int n = gather(g,vertices);
 
-		RadixPlaneSorter<Coord> p = null;
+		UniformGrid p = null;
 		if (alpha > Double.MIN_VALUE)
 		{
-			p = new RadixPlaneSorter<Coord>(Math.sqrt(gamma),Math.sqrt(gamma),40);
-			for (V a : vertices)
-				p.add(g.getCoord(a));
-		}	
+			p = grid;
+			p.build(n,ptx,pty,Math.sqrt(gamma));
+		}
+
+		Derivatives D = deriv;
 			
+		int k = 0;
 		for (V a : vertices)
 		{
-			Coord pa = g.getCoord(a);
+			int i = k++;
+			Coord pa = pts[i];
 			if (!pa.m)
 				continue;
 
-			Derivatives D = new Derivatives();
+			D.clear();
 			
 			if (p != null)
 			{
-				p.remove(pa);
-				addDerivatives(D, rootedLocalRepulsions(pa,p.getLocal(pa,Math.sqrt(gamma)),gamma), alpha);
+				p.remove(i);
+				p.getLocal(pa.x,pa.y,Math.sqrt(gamma),ptx,pty,local);
+				for (int j=0; j<local.size(); j++)
+				{
+					Coord pb = pts[local.get(j)];
+					rootedLocalRepulsion(D, pa.x-pb.x, pa.y-pb.y, gamma, alpha);
+				}
 			}
 
-			Collection<V> nh = g.getNeighbours(a);
-			Collection<Coord> nc = g.getCoords(nh);
-			addDerivatives(D, squaredAttractions(pa,nc), 1);
-			
-		//	addDerivatives(D, squaredAttractions(pa,g.getCoords(g.getNeighbours(a))), 1);
+			squaredAttractions(D, g, pa, g.getNeighbours(a), 1);
 
 			delta += update(pa,D);
 
 			if (p != null)
-				p.add(pa);
+			{
+				ptx[i] = pa.x;
+				pty[i] = pa.y;
+				p.add(i,pa.x,pa.y);
+			}
 		}
 
+		release(n);
 		return delta;
 	}
+
+	protected void forces(Derivatives D, int i, double[] x, double[] y, CSRGraph s, UniformGrid p, IntArray l)
+	{
+		if (p != null)
+		{
+			p.getLocal(x[i],y[i],d,x,y,l);
+			for (int j=0; j<l.size(); j++)
+			{
+				int b = l.get(j);
+				rootedLocalRepulsion(D, x[i]-x[b], y[i]-y[b], gamma, alpha);
+			}
+		}
+
+		for (int e=s.offset(i), f=s.offset(i+1); e<f; e++)
+		{
+			int b = s.target(e);
+			squaredAttraction(D, x[i]-x[b], y[i]-y[b], 1);
+		}
+	}
 }
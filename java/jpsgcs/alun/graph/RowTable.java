@@ -0,0 +1,298 @@
+package jpsgcs.alun.graph;
+
+import java.util.Arrays;
+
+/**
+	The rows of a graph, one for each vertex, kept by slot so that a
+	read only copy of the whole table can be made without copying it.
+
+	The rows are held in chunks of 1024 slots. freeze() gives a copy
+	that shares the chunks and the rows, and moves this table on to a
+	new epoch. From then on, a chunk or a row from an earlier epoch is
+	copied before it is changed, so the frozen copy never sees a change.
+	A change therefore copies only the rows it touches, and the chunks
+	that hold them, the first time after each freeze.
+
+	The table also finds the slot of a vertex from its hash. Each cell
+	of an open addressing table holds a hash and a slot, and is never
+	changed or cleared once it is used, except by making new cells.
+	The slot of a vertex that is removed and added again is filed in
+	another cell. Frozen copies share the cells, so the owner must check
+	that the row in a slot is for the vertex it is looking for. As the
+	rows of a frozen copy never change, a frozen copy that reads a cell
+	filed since it was made never takes it for one of its own.
+
+	Only one thread should change the table.
+*/
+
+class RowTable<R extends RowTable.Row>
+{
+/**
+	A row of the table. copy() should return a row with the same
+	contents that can be changed without changing this one.
+*/
+	static abstract class Row
+	{
+		abstract Row copy();
+
+		int epoch = 0;
+	}
+
+/**
+	Gives the hash of the vertex of a row, so that the cells can be
+	filed again when they are remade.
+*/
+	interface Hasher<R>
+	{
+		public int hash(R r);
+	}
+
+	RowTable(int cap, Hasher<R> f)
+	{
+		cap = Math.max(cap,1);
+		chunks = new Object[(cap+MASK) >>> SHIFT][];
+		stamps = new int[chunks.length];
+		hashes = new int[cells(cap)];
+		slots = new int[hashes.length];
+		hasher = f;
+	}
+
+/**
+	Returns the number of slots that have been used.
+*/
+	int size()
+	{
+		return n;
+	}
+
+/**
+	Returns the row in slot s, or null if there is none.
+*/
+	@SuppressWarnings("unchecked")
+	R get(int s)
+	{
+		if (s < 0 || s >= n)
+			return null;
+		Object[] c = chunks[s >>> SHIFT];
+		return c == null ? null : (R) c[s & MASK];
+	}
+
+/**
+	Returns the row in slot s, first copying it if it is shared with
+	a frozen copy, so that it can be changed.
+*/
+	@SuppressWarnings("unchecked")
+	R edit(int s)
+	{
+		R r = get(s);
+		if (r == null || r.epoch == epoch)
+			return r;
+		r = (R) r.copy();
+		r.epoch = epoch;
+		put(s,r);
+		return r;
+	}
+
+/**
+	Puts a new row in slot s, or clears the slot if r is null.
+*/
+	void set(int s, R r)
+	{
+		if (r != null)
+			r.epoch = epoch;
+		put(s,r);
+		if (s >= n)
+			n = s+1;
+	}
+
+/**
+	Puts a row taken from another table of the same owner in slot s.
+	It is still copied before it is changed if it is shared.
+*/
+	void move(int s, R r)
+	{
+		put(s,r);
+		if (s >= n)
+			n = s+1;
+	}
+
+/**
+	Returns an empty table, with room for cap rows, to move the rows of
+	this one into.
+*/
+	RowTable<R> renew(int cap)
+	{
+		RowTable<R> t = new RowTable<R>(cap,hasher);
+		t.epoch = epoch;
+		t.root = epoch;
+		return t;
+	}
+
+/**
+	Returns a copy of the table, as it is now, that shares its chunks,
+	rows and cells. The copy must only be read.
+*/
+	RowTable<R> freeze()
+	{
+		RowTable<R> t = new RowTable<R>(this);
+		epoch++;
+		return t;
+	}
+
+/**
+	Returns the first cell holding hash h, or -1 if there is none.
+*/
+	int find(int h)
+	{
+		return scan(h & (slots.length-1),h);
+	}
+
+/**
+	Returns the next cell after c holding hash h, or -1 if there is none.
+*/
+	int findNext(int c, int h)
+	{
+		return scan((c+1) & (slots.length-1),h);
+	}
+
+/**
+	Returns the slot in cell c.
+*/
+	int slotAt(int c)
+	{
+		return slots[c] - 1;
+	}
+
+/**
+	Files slot s under hash h.
+*/
+	void file(int h, int s)
+	{
+		if (2*(used+1) > slots.length)
+			refile(1);
+
+		int m = slots.length - 1;
+		int c = h & m;
+		while (slots[c] != 0)
+			c = (c+1) & m;
+		hashes[c] = h;
+		slots[c] = s+1;
+		used++;
+	}
+
+/**
+	Makes sure that there are cells for k more slots to be filed.
+*/
+	void reserve(int k)
+	{
+		if (2*(used+k) > slots.length)
+			refile(k);
+	}
+
+// Private data and methods.
+
+	private static final int SHIFT = 10;
+	private static final int MASK = (1 << SHIFT) - 1;
+
+	// The chunks, and the epoch of each chunk and of the array of chunks.
+
+	private Object[][] chunks = null;
+	private int[] stamps = null;
+	private int root = 0;
+	private int epoch = 0;
+	private int n = 0;
+
+	// The cells, holding hash and slot+1, with 0 for empty.
+
+	private int[] hashes = null;
+	private int[] slots = null;
+	private int used = 0;
+	private Hasher<R> hasher = null;
+
+	// A frozen copy of t.
+
+	private RowTable(RowTable<R> t)
+	{
+		chunks = t.chunks;
+		stamps = t.stamps;
+		root = -1;
+		epoch = -1;
+		n = t.n;
+		hashes = t.hashes;
+		slots = t.slots;
+		used = t.used;
+		hasher = t.hasher;
+	}
+
+	private static int cells(int k)
+	{
+		return Math.max(16,Integer.highestOneBit(Math.max(1,2*k-1)) << 1);
+	}
+
+	// Puts r in slot s, copying the array of chunks and the chunk first
+	// if they are shared with a frozen copy.
+
+	private void put(int s, Object r)
+	{
+		int c = s >>> SHIFT;
+
+		if (root != epoch || c >= chunks.length)
+		{
+			int m = c < chunks.length ? chunks.length : Math.max(c+1,2*chunks.length);
+			chunks = Arrays.copyOf(chunks,m);
+			stamps = Arrays.copyOf(stamps,m);
+			root = epoch;
+		}
+
+		Object[] k = chunks[c];
+		if (k == null)
+		{
+			if (r == null)
+				return;
+			k = new Object[MASK+1];
+			chunks[c] = k;
+			stamps[c] = epoch;
+		}
+		else if (stamps[c] != epoch)
+		{
+			k = k.clone();
+			chunks[c] = k;
+			stamps[c] = epoch;
+		}
+
+		k[s & MASK] = r;
+	}
+
+	private int scan(int c, int h)
+	{
+		int m = slots.length - 1;
+		for ( ; slots[c] != 0; c = (c+1) & m)
+			if (hashes[c] == h)
+				return c;
+		return -1;
+	}
+
+	// Makes new cells with room for k more than the slots that hold rows,
+	// and twice as many again so that this is not done too often, and
+	// files those slots in them. The old cells are left as they are for
+	// any frozen copies that share them.
+
+	private void refile(int k)
+	{
+		int live = 0;
+		for (int s=0; s<n; s++)
+			if (get(s) != null)
+				live++;
+
+		hashes = new int[cells(2*live+k)];
+		slots = new int[hashes.length];
+		used = 0;
+
+		for (int s=0; s<n; s++)
+		{
+			R r = get(s);
+			if (r != null)
+				file(hasher.hash(r),s);
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package jpsgcs.alun.graph;
+
+/**
+	A graph that counts the changes made to it, so that structures
+	derived from it, such as a CSRGraph snapshot, can tell when they
+	need to be remade.
+*/
+
+public interface VersionedGraph<V,E> extends Graph<V,E>
+{
+/**
+	Returns a number that changes every time the vertices or
+	edges of the graph are changed.
+*/
+	public long version();
+}
@@ -1,6 +1,7 @@
 package jpsgcs.alun.jtree;
 
 import jpsgcs.alun.graph.Graph;
+import jpsgcs.alun.graph.CSRGraph;
 import jpsgcs.alun.graph.Graphs;
 import jpsgcs.alun.graph.Network;
 import jpsgcs.alun.util.Pair;
@@ -9,6 +10,7 @@ import jpsgcs.alun.util.IntValue;
 
 import jpsgcs.alun.hashing.LinkedIdentityHashMap;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Collection;
 import java.util.ArrayList;
@@ -18,6 +20,7 @@ import java.util.Set;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Iterator;
 import java.util.Random;
@@ -29,20 +32,24 @@ public class JTrees
 {
 	public static <V,E> List<Pair<V,V>> edgeRecomposition(Graph<V,E> g)
 	{
-		List<V> l = maximumCardinality(g);
-		Set<V> p = new LinkedHashSet<V>(l);
+		List<V> v = new ArrayList<V>(g.getVertices());
+		CSRGraph s = CSRGraph.make(g);
+		int[] l = maximumCardinality(s);
+
+		if (!isPerfectEliminationOrder(s,l))
+			return null;
+
+		int[] pos = positions(l);
 		List<Pair<V,V>> result = new ArrayList<Pair<V,V>>();
 
-		for (V v : l)
+		for (int i : l)
 		{
-			p.remove(v);
-			Collection<V> s = new LinkedHashSet<V>(g.getNeighbours(v));
-			s.retainAll(p);
-			if (!Graphs.isClique(g,s))
-				return null;
-			
-			for (V u : s)
-				result.add(new Pair<V,V>(v,u));
+			for (int e=s.offsets[i]; e<s.offsets[i+1]; e++)
+			{
+				int j = s.targets[e];
+				if (pos[j] > pos[i])
+					result.add(new Pair<V,V>(v.get(i),v.get(j)));
+			}
 		}
 
 		Collections.reverse(result);
@@ -56,21 +63,83 @@ public class JTrees
 */
 	public static <V,E> boolean isPerfectEliminationOrder(Graph<V,E> g, List<V> l)
 	{
-		Set<V> s = new LinkedHashSet<V>(l);
+		Map<V,Integer> index = index(g,l);
+		if (index == null)
+			return false;
+
+		int[] p = new int[l.size()];
+		for (int i=0; i<p.length; i++)
+			p[i] = i;
+
+		return isPerfectEliminationOrder(CSRGraph.make(g,l,index,p.length),p);
+	}
 
-		if (l.size() != g.getVertices().size())
+/**
+	Returns true if the list of ids is a simple elimination scheme for the
+	snapshot. This is the check of Tarjan and Yannakakis, "Simple linear-time
+	algorithms to test chordality of graphs ...", SIAM J. Comput., 1984.
+	The follower of a vertex is its first neighbour after it in the order.
+	The order is perfect if each vertex's later neighbours, other than
+	its follower, are neighbours of the follower. The vertices are
+	grouped by follower, then each follower's neighbours are marked once
+	and the group is checked against the marks, so the whole test takes
+	time linear in the number of vertices and edges.
+*/
+	public static boolean isPerfectEliminationOrder(CSRGraph s, int[] l)
+	{
+		int n = s.size();
+		if (l.length != n)
 			return false;
 
-		for (V v : l)
-		{
-			if (!g.contains(v))
+		int[] pos = positions(l);
+		for (int i=0; i<n; i++)
+			if (pos[i] < 0)
 				return false;
-			s.remove(v);
-			Set<V> n = new LinkedHashSet<V>(g.getNeighbours(v));
-			n.retainAll(s);
-			if (!Graphs.isClique(g,n))
-				return false;
-		} 
+
+		// Group the vertices by follower in singly linked lists.
+
+		int[] first = new int[n];
+		int[] next = new int[n];
+		Arrays.fill(first,-1);
+
+		for (int i : l)
+		{
+			int f = -1;
+			for (int e=s.offsets[i]; e<s.offsets[i+1]; e++)
+			{
+				int j = s.targets[e];
+				if (pos[j] > pos[i] && (f < 0 || pos[j] < pos[f]))
+					f = j;
+			}
+
+			if (f >= 0)
+			{
+				next[i] = first[f];
+				first[f] = i;
+			}
+		}
+
+		int[] mark = new int[n];
+		Arrays.fill(mark,-1);
+
+		for (int f : l)
+		{
+			if (first[f] < 0)
+				continue;
+
+			for (int e=s.offsets[f]; e<s.offsets[f+1]; e++)
+				mark[s.targets[e]] = f;
+
+			for (int i=first[f]; i>=0; i=next[i])
+			{
+				for (int e=s.offsets[i]; e<s.offsets[i+1]; e++)
+				{
+					int j = s.targets[e];
+					if (pos[j] > pos[f] && mark[j] != f)
+						return false;
+				}
+			}
+		}
 	
 		return true;
 	}
@@ -81,7 +150,8 @@ public class JTrees
 */
 	public static <V,E> boolean isTriangulated(Graph<V,E> g)
 	{
-		return isPerfectEliminationOrder(g,maximumCardinality(g));
+		CSRGraph s = CSRGraph.make(g);
+		return isPerfectEliminationOrder(s,maximumCardinality(s));
 	}
 
 /**
@@ -95,8 +165,16 @@ public class JTrees
 
 	public static <V,E> Map<Clique<V>,Clique<V>> cliques(Graph<V,E> g, Collection<V> ord, Random r)
 	{
-		List<V> l = maximumCardinality(g,ord);
-		Collections.reverse(l);
+		List<V> o = new ArrayList<V>(ord);
+		CSRGraph s = snapshot(g,o);
+		int[] b = maximumCardinality(s);
+
+		if (!isPerfectEliminationOrder(s,b))
+			return null;
+
+		List<V> l = new ArrayList<V>(b.length);
+		for (int k=b.length-1; k>=0; k--)
+			l.add(o.get(b[k]));
 
 		Map<V,Clique<V>> map = new LinkedIdentityHashMap<V,Clique<V>>();
 
@@ -109,9 +187,6 @@ public class JTrees
 			Clique<V> C = new Clique<V>(g.getNeighbours(v),r);
 			C.retainAll(got);
 
-			if (!Graphs.isClique(g,C))
-				return null;
-
 			if (C.isEmpty())
 			{
 				C.add(v);
@@ -169,58 +244,66 @@ if (u == null)
 
 	public static <V,E> List<V> maximumCardinality(Graph<V,E> g, Collection<V> ord)
 	{
-		if (g.getVertices().isEmpty())
-			throw new RuntimeException("JTrees:maximumCardinality() supplied graph has no vertices.");
-
-		if (!g.getVertices().equals(ord))
-		{
-			throw new RuntimeException("JTrees:maximumCardinality() order collection does not match graph vertices");
-		}
+		List<V> v = new ArrayList<V>(ord);
+		int[] b = maximumCardinality(snapshot(g,v));
 
-		Map<V,IntValue> h = new LinkedHashMap<V,IntValue>();
-		LinkedHashSet<V> s = new LinkedHashSet<V>();
+		List<V> l = new ArrayList<V>(b.length);
+		for (int i : b)
+			l.add(v.get(i));
+		return l;
+	}
 
-		for (V v : ord)
-		{
-			h.put(v,new IntValue());
-			s.add(v);
-		}
+/**
+	Finds a maximum cardinality order for the vertices of a snapshot
+	whose ids are 0 to n-1. Ties are broken in favour of the vertex
+	that has had its current label longest, and then by id.
+	The labels are kept in doubly linked buckets indexed by
+	the vertex ids, so the search takes time linear in the number of
+	vertices and edges and allocates nothing after the start.
+*/
+	public static int[] maximumCardinality(CSRGraph s)
+	{
+		int n = s.size();
 
-		ArrayList<Set<V>> a = new ArrayList<Set<V>>();
-		a.add(s);
-		
-		ArrayList<V> b = new ArrayList<V>();
+		int[] label = new int[n];
+		int[] next = new int[n];
+		int[] prev = new int[n];
+		int[] head = new int[n];
+		int[] tail = new int[n];
+		Arrays.fill(head,-1);
+		Arrays.fill(tail,-1);
 
-		while (!a.isEmpty())
-		{
-			int i = a.size()-1;
-			V v = a.get(i).iterator().next();
-			b.add(v);
+		for (int i=0; i<n; i++)
+			append(i,0,head,tail,next,prev);
 
-			a.get(i).remove(v);
-			h.remove(v);
+		int[] b = new int[n];
+		int top = 0;
 
-			for (int j=i; j>=0 && a.get(j).isEmpty(); j--)
-				a.remove(j);
+		for (int k=n-1; k>=0; k--)
+		{
+			int v = head[top];
+			unlink(v,top,head,tail,next,prev);
+			label[v] = -1;
+			b[k] = v;
 
-			for (V u : g.getNeighbours(v))
+			for (int e=s.offsets[v]; e<s.offsets[v+1]; e++)
 			{
-				IntValue j = h.get(u);
-			
-				if (j == null)
+				int u = s.targets[e];
+				int j = label[u];
+				if (j < 0)
 					continue;
-				
-				a.get(j.value()).remove(u);
 
-				j.add(1);
-				if (j.value() == a.size())
-					a.add(new LinkedHashSet<V>());
-
-				a.get(j.value()).add(u);
+				unlink(u,j,head,tail,next,prev);
+				label[u] = ++j;
+				append(u,j,head,tail,next,prev);
+				if (top < j)
+					top = j;
 			}
+
+			while (top > 0 && head[top] < 0)
+				top--;
 		}
 
-		Collections.reverse(b);
 		return b;
 	}
 
@@ -463,4 +546,75 @@ if (u == null)
 		Collections.reverse(result);
 		return result;
 	}
+
+// Private data and methods.
+
+	// Makes a snapshot of g with ids in the order of v, after checking
+	// that v is a non empty list of the vertices of g.
+
+	private static <V,E> CSRGraph snapshot(Graph<V,E> g, List<V> v)
+	{
+		if (g.getVertices().isEmpty())
+			throw new RuntimeException("JTrees:maximumCardinality() supplied graph has no vertices.");
+
+		Map<V,Integer> index = index(g,v);
+		if (index == null)
+		{
+			throw new RuntimeException("JTrees:maximumCardinality() order collection does not match graph vertices");
+		}
+
+		return CSRGraph.make(g,v,index,v.size());
+	}
+
+	// Returns the inverse of the permutation l, with -1 for any
+	// value that l misses or that is out of range.
+
+	private static int[] positions(int[] l)
+	{
+		int[] pos = new int[l.length];
+		Arrays.fill(pos,-1);
+		for (int k=0; k<l.length; k++)
+			if (l[k] >= 0 && l[k] < l.length)
+				pos[l[k]] = k;
+		return pos;
+	}
+
+	// Maps the vertices in ord to 0 to n-1 in order, or returns null if
+	// ord is not exactly the vertices of g.
+
+	private static <V,E> Map<V,Integer> index(Graph<V,E> g, Collection<V> ord)
+	{
+		if (ord.size() != g.getVertices().size())
+			return null;
+
+		Map<V,Integer> index = new HashMap<V,Integer>(2*ord.size());
+		for (V v : ord)
+			if (!g.contains(v) || index.put(v,index.size()) != null)
+				return null;
+
+		return index;
+	}
+
+	private static void append(int v, int j, int[] head, int[] tail, int[] next, int[] prev)
+	{
+		next[v] = -1;
+		prev[v] = tail[j];
+		if (tail[j] < 0)
+			head[j] = v;
+		else
+			next[tail[j]] = v;
+		tail[j] = v;
+	}
+
+	private static void unlink(int v, int j, int[] head, int[] tail, int[] next, int[] prev)
+	{
+		if (prev[v] < 0)
+			head[j] = next[v];
+		else
+			next[prev[v]] = next[v];
+		if (next[v] < 0)
+			tail[j] = prev[v];
+		else
+			prev[next[v]] = prev[v];
+	}
 }
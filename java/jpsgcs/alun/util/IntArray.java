@@ -0,0 +1,90 @@
+package jpsgcs.alun.util;
+
+/**
+ A growable list of primitive ints. Clearing it keeps the storage,
+ so it can be used as a reusable buffer without making garbage.
+*/
+
+public class IntArray
+{
+	public IntArray()
+	{
+		this(16);
+	}
+
+	public IntArray(int cap)
+	{
+		a = new int[Math.max(cap,1)];
+	}
+
+	public void add(int i)
+	{
+		if (n == a.length)
+			ensureCapacity(2*n);
+		a[n++] = i;
+	}
+
+	public int get(int i)
+	{
+		return a[i];
+	}
+
+	public void set(int i, int x)
+	{
+		a[i] = x;
+	}
+
+	public int size()
+	{
+		return n;
+	}
+
+	public boolean isEmpty()
+	{
+		return n == 0;
+	}
+
+	public void clear()
+	{
+		n = 0;
+	}
+
+/**
+ Removes the element at position i by moving the last element into
+ its place. The order of the elements is not kept.
+*/
+	public void removeFast(int i)
+	{
+		a[i] = a[--n];
+	}
+
+	public void ensureCapacity(int cap)
+	{
+		if (cap > a.length)
+		{
+			int[] b = new int[cap];
+			System.arraycopy(a,0,b,0,n);
+			a = b;
+		}
+	}
+
+/**
+ Returns the backing array. Only the first size() elements are used.
+*/
+	public int[] array()
+	{
+		return a;
+	}
+
+	public int[] toArray()
+	{
+		int[] b = new int[n];
+		System.arraycopy(a,0,b,0,n);
+		return b;
+	}
+
+// Private data.
+
+	private int[] a = null;
+	private int n = 0;
+}
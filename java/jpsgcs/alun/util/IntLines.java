@@ -0,0 +1,87 @@
+package jpsgcs.alun.util;
+
+/**
+ Lines of integers, as read by IntListReader, kept in primitive arrays.
+ Line i starts with first(i), and the rest of its integers are get(k)
+ for k from start(i) to end(i)-1. Read as an adjacency list, the first
+ integer on each line is a vertex and the rest are its neighbours.
+*/
+public class IntLines
+{
+	public int lines()
+	{
+		return heads.size();
+	}
+
+	public int first(int i)
+	{
+		return heads.get(i);
+	}
+
+	public int start(int i)
+	{
+		return i == 0 ? 0 : ends.get(i-1);
+	}
+
+	public int end(int i)
+	{
+		return ends.get(i);
+	}
+
+	public int get(int k)
+	{
+		return rest.get(k);
+	}
+
+/**
+ Returns the total number of integers after the first on each line,
+ which is the number of edges when read as an adjacency list.
+*/
+	public int size()
+	{
+		return rest.size();
+	}
+
+/**
+ Adds a line with the given first integer and no others.
+*/
+	public void addLine(int a)
+	{
+		heads.add(a);
+		ends.add(rest.size());
+	}
+
+/**
+ Adds an integer to the end of the last line.
+*/
+	public void add(int a)
+	{
+		rest.add(a);
+		ends.set(ends.size()-1,rest.size());
+	}
+
+/**
+ Adds all the lines of the other to the end of these.
+*/
+	public void append(IntLines b)
+	{
+		int off = rest.size();
+		heads.ensureCapacity(heads.size()+b.heads.size());
+		ends.ensureCapacity(ends.size()+b.ends.size());
+		rest.ensureCapacity(rest.size()+b.rest.size());
+
+		for (int i=0; i<b.heads.size(); i++)
+		{
+			heads.add(b.heads.get(i));
+			ends.add(off + b.ends.get(i));
+		}
+		for (int k=0; k<b.rest.size(); k++)
+			rest.add(b.rest.get(k));
+	}
+
+// Private data.
+
+	private IntArray heads = new IntArray();
+	private IntArray ends = new IntArray();
+	private IntArray rest = new IntArray();
+}
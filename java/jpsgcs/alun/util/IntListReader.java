@@ -0,0 +1,338 @@
+package jpsgcs.alun.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.FileInputStream;
+import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPInputStream;
+
+/**
+ Reads lines of whitespace separated integers, such as edge lists and
+ adjacency lists, straight from bytes. Input is read through an NIO
+ channel into a reused buffer and the integers are parsed from the bytes,
+ so no Strings or boxed Integers are made. Gzipped input is recognised by
+ its first two bytes and decompressed on the fly.
+
+ An uncompressed file can also be read in parallel: it is split into
+ chunks at line ends, each chunk is memory mapped and parsed by its own
+ task, and the results are joined in order. Errors give the line number
+ in the whole file, as they do when it is read in one go.
+*/
+public class IntListReader
+{
+/**
+ Reads from the given stream, decompressing it if it is gzipped.
+*/
+	public IntListReader(InputStream in) throws IOException
+	{
+		PushbackInputStream p = new PushbackInputStream(in,2);
+		int a = p.read();
+		int b = a < 0 ? -1 : p.read();
+		if (b >= 0)
+			p.unread(b);
+		if (a >= 0)
+			p.unread(a);
+
+		InputStream s = a == 0x1f && b == 0x8b ? new GZIPInputStream(p,1<<16) : p;
+		ch = Channels.newChannel(s);
+		buf = ByteBuffer.allocate(1<<16);
+		buf.flip();
+	}
+
+/**
+ Reads from the named file, decompressing it if it is gzipped.
+*/
+	public IntListReader(String file) throws IOException
+	{
+		this(new FileInputStream(file));
+	}
+
+	// Reads from a buffer that already holds all the input.
+
+	private IntListReader(ByteBuffer b)
+	{
+		ch = null;
+		buf = b;
+	}
+
+/**
+ Reads the integers on the next line that has any into the array, and
+ returns false if there are no more.
+*/
+	public boolean nextLine(IntArray a) throws IOException
+	{
+		a.clear();
+		while (a.isEmpty())
+		{
+			if (!line(a,null))
+				return !a.isEmpty();
+		}
+		return true;
+	}
+
+/**
+ Reads all the remaining lines.
+*/
+	public IntLines readAll() throws IOException
+	{
+		IntLines l = new IntLines();
+		while (line(null,l))
+		{
+		}
+		return l;
+	}
+
+	public void close() throws IOException
+	{
+		if (ch != null)
+			ch.close();
+	}
+
+/**
+ Reads all the lines of the named file, using a pool of the given number
+ of threads if the file is not gzipped, and this thread otherwise.
+ A file name of "-" means the standard input.
+*/
+	public static IntLines read(String file, int tasks) throws IOException
+	{
+		if (file == null || file.equals("-"))
+			return new IntListReader(System.in).readAll();
+
+		RandomAccessFile f = new RandomAccessFile(file,"r");
+		try
+		{
+			boolean gzip = f.length() >= 2 && f.read() == 0x1f && f.read() == 0x8b;
+			if (gzip || tasks <= 1 || f.length() < 1<<20)
+			{
+				IntListReader r = new IntListReader(file);
+				try
+				{
+					return r.readAll();
+				}
+				finally
+				{
+					r.close();
+				}
+			}
+
+			return read(f.getChannel(),tasks);
+		}
+		finally
+		{
+			f.close();
+		}
+	}
+
+// Private data and methods.
+
+	private ReadableByteChannel ch = null;
+	private ByteBuffer buf = null;
+	private int lineno = 0;
+
+	// Returns the next byte, or -1 at the end of the input.
+
+	private int next() throws IOException
+	{
+		if (!buf.hasRemaining())
+		{
+			if (ch == null)
+				return -1;
+			buf.clear();
+			int k = 0;
+			while (k == 0)
+				k = ch.read(buf);
+			buf.flip();
+			if (k < 0)
+				return -1;
+		}
+		return buf.get() & 0xff;
+	}
+
+	// Reads one line, putting the integers either into a or, as a new line,
+	// into l. Returns false if the end of the input was reached.
+
+	private boolean line(IntArray a, IntLines l) throws IOException
+	{
+		lineno++;
+		boolean first = true;
+		int c = next();
+
+		while (true)
+		{
+			while (c == ' ' || c == '\t' || c == '\r' || c == '\f')
+				c = next();
+
+			if (c == '\n')
+				return true;
+			if (c < 0)
+				return false;
+
+			boolean neg = false;
+			if (c == '-' || c == '+')
+			{
+				neg = c == '-';
+				c = next();
+			}
+
+			if (c < '0' || c > '9')
+				throw new LineException("Not an integer",lineno);
+
+			long v = 0;
+			while (c >= '0' && c <= '9')
+			{
+				v = 10*v + (c - '0');
+				if (v > 1L + Integer.MAX_VALUE)
+					throw new LineException("Integer too large",lineno);
+				c = next();
+			}
+
+			if (c >= 0 && c != ' ' && c != '\t' && c != '\r' && c != '\f' && c != '\n')
+				throw new LineException("Not an integer",lineno);
+
+			v = neg ? -v : v;
+			if (v > Integer.MAX_VALUE)
+				throw new LineException("Integer too large",lineno);
+
+			if (a != null)
+				a.add((int)v);
+			else if (first)
+				l.addLine((int)v);
+			else
+				l.add((int)v);
+			first = false;
+		}
+	}
+
+	// Splits the file into chunks that end at line ends, and parses them
+	// in parallel.
+
+	private static IntLines read(FileChannel c, int tasks) throws IOException
+	{
+		long size = c.size();
+		int k = (int) Math.max(4L*tasks, size/(1<<30) + 1);
+
+		List<Long> cuts = new ArrayList<Long>();
+		cuts.add(0L);
+		ByteBuffer b = ByteBuffer.allocate(1<<12);
+		for (int i=1; i<k; i++)
+		{
+			long p = Math.max(size*i/k, cuts.get(cuts.size()-1));
+			while (p < size)
+			{
+				b.clear();
+				int n = c.read(b,p);
+				int j = 0;
+				while (j < n && b.get(j) != '\n')
+					j++;
+				p += j;
+				if (j < n)
+				{
+					p++;
+					break;
+				}
+			}
+			if (p > cuts.get(cuts.size()-1) && p < size)
+				cuts.add(p);
+		}
+		cuts.add(size);
+
+		Chunk[] chunks = new Chunk[cuts.size()-1];
+		for (int i=0; i<chunks.length; i++)
+			chunks[i] = new Chunk(c.map(FileChannel.MapMode.READ_ONLY,cuts.get(i),cuts.get(i+1)-cuts.get(i)));
+
+		ForkJoinPool pool = new ForkJoinPool(tasks);
+		try
+		{
+			for (Chunk h : chunks)
+				pool.execute(h);
+			for (Chunk h : chunks)
+				h.join();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		// Each chunk but the last ends at a line end, so the lines before
+		// a chunk are the lines read by those before it.
+
+		int before = 0;
+		for (int i=0; i<chunks.length; i++)
+		{
+			if (chunks[i].error != null)
+				throw new LineException(chunks[i].error.what,before+chunks[i].error.line);
+			if (chunks[i].other != null)
+				throw chunks[i].other;
+			before += chunks[i].count;
+		}
+
+		IntLines l = chunks[0].lines;
+		for (int i=1; i<chunks.length; i++)
+			l.append(chunks[i].lines);
+
+		return l;
+	}
+
+	private static class Chunk extends RecursiveAction
+	{
+		Chunk(ByteBuffer b)
+		{
+			buf = b;
+		}
+
+		protected void compute()
+		{
+			IntListReader r = new IntListReader(buf);
+			try
+			{
+				lines = r.readAll();
+			}
+			catch (LineException e)
+			{
+				error = e;
+				lines = new IntLines();
+			}
+			catch (IOException e)
+			{
+				other = e;
+				lines = new IntLines();
+			}
+			count = r.lineno - 1;
+		}
+
+		private static final long serialVersionUID = 1L;
+
+		private ByteBuffer buf = null;
+		IntLines lines = null;
+		LineException error = null;
+		IOException other = null;
+		int count = 0;
+	}
+
+	// An error in the input, with what was wrong and the line it was on
+	// kept apart so that the line number can be corrected.
+
+	private static class LineException extends IOException
+	{
+		LineException(String w, int l)
+		{
+			super(w+" on line "+l);
+			what = w;
+			line = l;
+		}
+
+		private static final long serialVersionUID = 1L;
+
+		final String what;
+		final int line;
+	}
+}
@@ -0,0 +1,264 @@
+package jpsgcs.alun.util;
+
+/**
+ A region quadtree over a set of points in the plane, as used for the
+ Barnes-Hut approximation of forces between all pairs of points.
+ Each cell keeps the number of points inside it and their centre of mass, so
+ that a cell which is small compared to its distance from a query point can
+ stand in for all of the points it contains.
+
+ The tree is stored in parallel primitive arrays that are reused each time
+ it is rebuilt, so rebuilding it once per layout sweep makes no garbage
+ once the arrays have grown to size.
+*/
+public class QuadTree
+{
+/**
+ An object that receives the cells, or single points, that are close
+ enough to a query point to be used as they are.
+*/
+	public interface Visitor
+	{
+		public void visit(double x, double y, double mass);
+	}
+
+	public QuadTree()
+	{
+		this(64);
+	}
+
+	public QuadTree(int cap)
+	{
+		allocateNodes(cap);
+		allocatePoints(cap);
+	}
+
+/**
+ Rebuilds the tree so that it holds the first n points whose coordinates
+ are given in x and y. Point i is refered to by its index i in the
+ visit() method.
+*/
+	public void build(double[] x, double[] y, int n)
+	{
+		if (px.length < n)
+			allocatePoints(n);
+		npoints = n;
+		nnodes = 0;
+
+		if (n == 0)
+			return;
+
+		double xl = Double.MAX_VALUE;
+		double xh = -Double.MAX_VALUE;
+		double yl = Double.MAX_VALUE;
+		double yh = -Double.MAX_VALUE;
+
+		for (int i=0; i<n; i++)
+		{
+			px[i] = x[i];
+			py[i] = y[i];
+			if (xl > x[i]) xl = x[i];
+			if (xh < x[i]) xh = x[i];
+			if (yl > y[i]) yl = y[i];
+			if (yh < y[i]) yh = y[i];
+		}
+
+		double h = 0.5 * Math.max(xh-xl,yh-yl) + 1;
+		newNode((xl+xh)/2,(yl+yh)/2,h);
+
+		for (int i=0; i<n; i++)
+			insert(i);
+	}
+
+/**
+ Passes to the visitor every cell that is far enough from the point (x,y)
+ to be used as a single mass, and every point that is not. A cell is far
+ enough if its width divided by its distance from (x,y) is less than theta.
+ The point with index self, if any, is left out.
+ Setting theta to zero gives the exact sum over all points.
+*/
+	public void visit(int self, double x, double y, double theta, Visitor v)
+	{
+		if (nnodes == 0)
+			return;
+
+		double tt = theta*theta;
+		double sx = self >= 0 && self < npoints ? px[self] : Double.NaN;
+		double sy = self >= 0 && self < npoints ? py[self] : Double.NaN;
+
+		int top = 0;
+		stack[top++] = 0;
+
+		while (top > 0)
+		{
+			int k = stack[--top];
+
+			if (child[k] < 0)
+			{
+				for (int i = first[k]; i >= 0; i = next[i])
+					if (i != self)
+						v.visit(px[i],py[i],1);
+				continue;
+			}
+
+			double m = mass[k];
+			double cx = sumx[k]/m;
+			double cy = sumy[k]/m;
+			double dx = cx - x;
+			double dy = cy - y;
+			double w = 2*half[k];
+
+			boolean inside = Math.abs(sx-midx[k]) <= half[k] && Math.abs(sy-midy[k]) <= half[k];
+
+			if (!inside && w*w < tt*(dx*dx+dy*dy))
+			{
+				v.visit(cx,cy,m);
+				continue;
+			}
+
+			if (top + 4 > stack.length)
+				stack = grow(stack,2*stack.length);
+
+			for (int c = child[k]; c < child[k]+4; c++)
+				if (mass[c] > 0)
+					stack[top++] = c;
+		}
+	}
+
+	public int size()
+	{
+		return npoints;
+	}
+
+// Private data and methods.
+
+	private static final int maxdepth = 48;
+
+	private int nnodes = 0;
+	private double[] midx = null;
+	private double[] midy = null;
+	private double[] half = null;
+	private double[] sumx = null;
+	private double[] sumy = null;
+	private double[] mass = null;
+	private int[] child = null;
+	private int[] first = null;
+
+	private int npoints = 0;
+	private double[] px = null;
+	private double[] py = null;
+	private int[] next = null;
+
+	private int[] stack = new int[256];
+
+	private void insert(int p)
+	{
+		double x = px[p];
+		double y = py[p];
+		next[p] = -1;
+
+		for (int k = 0, depth = 0; ; depth++)
+		{
+			mass[k] += 1;
+			sumx[k] += x;
+			sumy[k] += y;
+
+			if (child[k] >= 0)
+			{
+				k = child[k] + quadrant(k,x,y);
+				continue;
+			}
+
+			if (first[k] < 0)
+			{
+				first[k] = p;
+				return;
+			}
+
+			if (depth >= maxdepth)
+			{
+				next[p] = first[k];
+				first[k] = p;
+				return;
+			}
+
+			split(k);
+			k = child[k] + quadrant(k,x,y);
+		}
+	}
+
+	private void split(int k)
+	{
+		double h = half[k]/2;
+		int c = nnodes;
+		newNode(midx[k]-h,midy[k]-h,h);
+		newNode(midx[k]+h,midy[k]-h,h);
+		newNode(midx[k]-h,midy[k]+h,h);
+		newNode(midx[k]+h,midy[k]+h,h);
+		child[k] = c;
+
+		int q = first[k];
+		first[k] = -1;
+		int j = c + quadrant(k,px[q],py[q]);
+		mass[j] = 1;
+		sumx[j] = px[q];
+		sumy[j] = py[q];
+		first[j] = q;
+	}
+
+	private int quadrant(int k, double x, double y)
+	{
+		return (x < midx[k] ? 0 : 1) + (y < midy[k] ? 0 : 2);
+	}
+
+	private void newNode(double x, double y, double h)
+	{
+		if (nnodes == mass.length)
+			allocateNodes(2*nnodes);
+
+		midx[nnodes] = x;
+		midy[nnodes] = y;
+		half[nnodes] = h;
+		sumx[nnodes] = 0;
+		sumy[nnodes] = 0;
+		mass[nnodes] = 0;
+		child[nnodes] = -1;
+		first[nnodes] = -1;
+		nnodes++;
+	}
+
+	private void allocateNodes(int n)
+	{
+		midx = grow(midx,n);
+		midy = grow(midy,n);
+		half = grow(half,n);
+		sumx = grow(sumx,n);
+		sumy = grow(sumy,n);
+		mass = grow(mass,n);
+		child = grow(child,n);
+		first = grow(first,n);
+	}
+
+	private void allocatePoints(int n)
+	{
+		px = new double[n];
+		py = new double[n];
+		next = new int[n];
+	}
+
+	private static double[] grow(double[] a, int n)
+	{
+		double[] b = new double[n];
+		if (a != null)
+			System.arraycopy(a,0,b,0,Math.min(a.length,n));
+		return b;
+	}
+
+	private static int[] grow(int[] a, int n)
+	{
+		int[] b = new int[n];
+		if (a != null)
+			System.arraycopy(a,0,b,0,Math.min(a.length,n));
+		return b;
+	}
+}
@@ -52,11 +52,14 @@ public class SafeThread extends Thread
 
 /**
  Stops the thread. It cannot then be resumed.
+ The thread is also interrupted so that a delegate that is
+ sleeping or waiting in its loop() method returns at once.
 */
 	synchronized public void safeStop()
 	{
 		done = true;
 		notify();
+		interrupt();
 	}
 
 /**
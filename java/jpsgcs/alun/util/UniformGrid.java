@@ -0,0 +1,361 @@
+package jpsgcs.alun.util;
+
+import java.util.Arrays;
+
+/**
+ A uniform grid over a set of points in the plane for finding the points
+ that are within a given distance of a query point.
+ Points are refered to by integer ids, and their coordinates are kept by
+ the caller in arrays indexed by id.
+
+ The grid is made by counting sort in O(n) time: each point's cell is found,
+ the points in each cell are counted, and the ids are then put into one
+ array so that those in the same cell are next to each other. If the
+ bounding box of the points needs no more than about 2n cells they are
+ stored directly. Otherwise, as when a few points are far from the rest,
+ the cells are hashed into a table of about 2n buckets, and queries check
+ the cell of each point found so that distant cells that share a bucket
+ do not get mixed up.
+
+ A point can be removed and added again once it has moved, as is done
+ by the locators for each vertex as they update it. A point added back
+ into a cell that has a free slot goes there, otherwise it is kept in a
+ linked list for the cell. When the cells are stored directly, points that
+ move outside the bounding box are put in the nearest edge cell.
+
+ Queries only read the grid, so any number of threads can make them at
+ once while it is not being changed.
+
+ All the storage is in int arrays that are kept and reused each time the
+ grid is made, so rebuilding it once per sweep makes no garbage once the
+ arrays have grown to size.
+*/
+public class UniformGrid
+{
+/**
+ An object that is given the ids of the points found by a query.
+*/
+	public interface Visitor
+	{
+		public void visit(int j);
+	}
+
+/**
+ Makes the grid for the points with ids 0 to n-1, using cells of
+ size at least r.
+*/
+	public void build(int n, double[] x, double[] y, double r)
+	{
+		if (all.length < n)
+		{
+			all = new int[n];
+			for (int k=0; k<n; k++)
+				all[k] = k;
+		}
+		build(all,n,x,y,r);
+	}
+
+/**
+ Makes the grid for the points with the first n ids in the given array,
+ using cells of size at least r.
+*/
+	public void build(int[] ids, int n, double[] x, double[] y, double r)
+	{
+		int max = 0;
+		double xl = Double.MAX_VALUE;
+		double xh = -Double.MAX_VALUE;
+		double yl = Double.MAX_VALUE;
+		double yh = -Double.MAX_VALUE;
+
+		for (int k=0; k<n; k++)
+		{
+			int i = ids[k];
+			if (max < i)
+				max = i;
+			if (xl > x[i]) xl = x[i];
+			if (xh < x[i]) xh = x[i];
+			if (yl > y[i]) yl = y[i];
+			if (yh < y[i]) yh = y[i];
+		}
+
+		if (n == 0)
+		{
+			xl = xh = yl = yh = 0;
+		}
+
+		// Store the cells directly if there are not too many of them,
+		// otherwise hash them.
+
+		double w = Math.max(r,Double.MIN_VALUE);
+		x0 = xl;
+		y0 = yl;
+		side = w;
+
+		double cells = ((xh-xl)/w + 1) * ((yh-yl)/w + 1);
+		int nc = 0;
+		if (cells <= 2*n + 16)
+		{
+			hashed = false;
+			nx = Math.max(1, (int)((xh-xl)/w) + 1);
+			ny = Math.max(1, (int)((yh-yl)/w) + 1);
+			nc = nx*ny;
+		}
+		else
+		{
+			hashed = true;
+			nc = Integer.highestOneBit(2*n + 16) << 1;
+			nx = Integer.MAX_VALUE;
+			ny = Integer.MAX_VALUE;
+		}
+
+		if (start.length < nc+1)
+		{
+			start = new int[nc+1];
+			end = new int[nc];
+			head = new int[nc];
+		}
+
+		if (cell.length < max+1)
+		{
+			cell = new int[max+1];
+			pos = new int[max+1];
+			next = new int[max+1];
+			prev = new int[max+1];
+		}
+
+		if (items.length < n)
+			items = new int[n];
+
+		ncells = nc;
+
+		// Counting sort.
+
+		Arrays.fill(start,0,nc+1,0);
+		Arrays.fill(head,0,nc,-1);
+		Arrays.fill(cell,0,cell.length,-1);
+
+		for (int k=0; k<n; k++)
+		{
+			int i = ids[k];
+			cell[i] = cellOf(x[i],y[i]);
+			start[cell[i]+1]++;
+		}
+
+		for (int c=0; c<nc; c++)
+		{
+			start[c+1] += start[c];
+			end[c] = start[c];
+		}
+
+		for (int k=0; k<n; k++)
+		{
+			int i = ids[k];
+			int c = cell[i];
+			pos[i] = end[c];
+			items[end[c]++] = i;
+		}
+	}
+
+/**
+ Takes the point with the given id out of the grid.
+*/
+	public void remove(int i)
+	{
+		if (i >= cell.length || cell[i] < 0)
+			return;
+
+		int c = cell[i];
+		if (pos[i] >= 0)
+		{
+			int last = --end[c];
+			int j = items[last];
+			items[pos[i]] = j;
+			pos[j] = pos[i];
+		}
+		else
+		{
+			if (prev[i] >= 0)
+				next[prev[i]] = next[i];
+			else
+				head[c] = next[i];
+			if (next[i] >= 0)
+				prev[next[i]] = prev[i];
+		}
+
+		cell[i] = -1;
+		pos[i] = -1;
+	}
+
+/**
+ Puts the point with the given id into the grid at (a,b). Only ids that
+ were in the grid when it was made can be added.
+*/
+	public void add(int i, double a, double b)
+	{
+		remove(i);
+
+		int c = cellOf(a,b);
+		cell[i] = c;
+
+		if (end[c] < start[c+1])
+		{
+			pos[i] = end[c];
+			items[end[c]++] = i;
+		}
+		else
+		{
+			pos[i] = -1;
+			prev[i] = -1;
+			next[i] = head[c];
+			if (head[c] >= 0)
+				prev[head[c]] = i;
+			head[c] = i;
+		}
+	}
+
+/**
+ Puts into v the ids of the points within distance r of (a,b) using the
+ given coordinate arrays, and returns the number found.
+*/
+	public int getLocal(double a, double b, double r, double[] x, double[] y, IntArray v)
+	{
+		v.clear();
+
+		if (start.length == 0)
+			return 0;
+
+		double rr = r*r;
+		int il = col(a-r);
+		int ih = col(a+r);
+		int jl = row(b-r);
+		int jh = row(b+r);
+
+		for (int j=jl; j<=jh; j++)
+			for (int i=il; i<=ih; i++)
+			{
+				int c = index(i,j);
+
+				for (int k=start[c]; k<end[c]; k++)
+				{
+					int m = items[k];
+					double xx = x[m] - a;
+					double yy = y[m] - b;
+					if (xx*xx + yy*yy < rr && (!hashed || (col(x[m]) == i && row(y[m]) == j)))
+						v.add(m);
+				}
+
+				for (int m = head[c]; m >= 0; m = next[m])
+				{
+					double xx = x[m] - a;
+					double yy = y[m] - b;
+					if (xx*xx + yy*yy < rr && (!hashed || (col(x[m]) == i && row(y[m]) == j)))
+						v.add(m);
+				}
+			}
+
+		return v.size();
+	}
+
+/**
+ Calls the visitor with the id of each point within distance r of (a,b)
+ using the given coordinate arrays.
+*/
+	public void visitLocal(double a, double b, double r, double[] x, double[] y, Visitor v)
+	{
+		if (start.length == 0)
+			return;
+
+		double rr = r*r;
+		int il = col(a-r);
+		int ih = col(a+r);
+		int jl = row(b-r);
+		int jh = row(b+r);
+
+		for (int j=jl; j<=jh; j++)
+			for (int i=il; i<=ih; i++)
+			{
+				int c = index(i,j);
+
+				for (int k=start[c]; k<end[c]; k++)
+				{
+					int m = items[k];
+					double xx = x[m] - a;
+					double yy = y[m] - b;
+					if (xx*xx + yy*yy < rr && (!hashed || (col(x[m]) == i && row(y[m]) == j)))
+						v.visit(m);
+				}
+
+				for (int m = head[c]; m >= 0; m = next[m])
+				{
+					double xx = x[m] - a;
+					double yy = y[m] - b;
+					if (xx*xx + yy*yy < rr && (!hashed || (col(x[m]) == i && row(y[m]) == j)))
+						v.visit(m);
+				}
+			}
+	}
+
+// Private data and methods.
+
+	private double x0 = 0;
+	private double y0 = 0;
+	private double side = 1;
+	private int nx = 0;
+	private int ny = 0;
+	private boolean hashed = false;
+	private int ncells = 0;
+
+	// Per cell: the ids in cell c are items[start[c]] to items[end[c]-1],
+	// followed by the linked list starting at head[c].
+
+	private int[] start = new int[0];
+	private int[] end = new int[0];
+	private int[] head = new int[0];
+	private int[] items = new int[0];
+
+	// Per id: the cell the point is in, or -1, its place in items, or -1
+	// if it is in a linked list, and the links for the list.
+
+	private int[] cell = new int[0];
+	private int[] pos = new int[0];
+	private int[] next = new int[0];
+	private int[] prev = new int[0];
+
+	private int[] all = new int[0];
+
+	// The column and row of the cell containing a point. These are clamped
+	// to the grid when the cells are stored directly, and to a range that
+	// cannot overflow when they are hashed.
+
+	private int col(double a)
+	{
+		return clamp((a-x0)/side,nx);
+	}
+
+	private int row(double b)
+	{
+		return clamp((b-y0)/side,ny);
+	}
+
+	private int clamp(double t, int n)
+	{
+		if (hashed)
+			return (int) Math.max(-BIG, Math.min(BIG, Math.floor(t)));
+		return t <= 0 ? 0 : t >= n-1 ? n-1 : (int) t;
+	}
+
+	private int index(int i, int j)
+	{
+		if (!hashed)
+			return j*nx + i;
+		int h = i * 0x9E3779B1 + j * 0x7FEB352D;
+		return (h ^ (h >>> 15)) & (ncells-1);
+	}
+
+	private int cellOf(double a, double b)
+	{
+		return index(col(a),row(b));
+	}
+
+	static private final int BIG = 1 << 30;
+}
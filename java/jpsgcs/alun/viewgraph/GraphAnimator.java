@@ -8,13 +8,42 @@ import jpsgcs.alun.animate.Loop;
 import java.awt.Panel;
 import java.awt.Frame;
 import java.awt.Color;
+import jpsgcs.alun.markov.Parameter;
 import java.util.ConcurrentModificationException;
+import java.util.Arrays;
+
+/**
+	Runs a GraphLocator on a PaintableGraph in its own thread and shows
+	the results on an ActiveCanvas.
+
+	The layout has its own thread, which makes sweeps one after another
+	without waiting for the display. No more often than once every pause
+	time, it publishes a copy of the coordinates to the PaintableGraph
+	and asks the canvas to repaint. The event thread paints from that
+	copy, so a slow paint neither holds up the layout nor sees vertices
+	half way through a sweep. If a number of sweeps per frame is set, the
+	layout thread waits for the next frame once it has made them.
+
+	Once the layout has settled, so that the amount moved in a sweep is
+	less than the tolerance for each vertex swept, the thread waits
+	between sweeps, doubling the wait each time up to a limit, and goes
+	back to full speed as soon as things move again.
+
+	If the layout stays settled until that limit is reached, the thread
+	stops sweeping and painting altogether. It then only checks, every
+	poll time, whether the graph, the coordinates, which vertices are
+	shown or the locator's parameters have changed, and goes back to
+	work as soon as they have. So other code need do nothing for a
+	change to be seen, but wake() starts the layout at once rather than
+	at the next check. The GraphListener calls it for every mouse and
+	key event, and the setters here when they change something.
+	Finishing the loop also ends a parked thread at once.
+*/
 
 public class GraphAnimator<V,E> implements SafeRunnable
 {
 	public GraphAnimator(PaintableGraph<V,E> g, GraphLocator<V,E> m)
 	{
-		loop = new Loop(this);
 		graph = g;
 		mover = m;
 		delay = 40;
@@ -24,15 +53,50 @@ public class GraphAnimator<V,E> implements SafeRunnable
 		canv.setSize(1000,1000);
 
 		canv.addMouseKeyListener(new GraphListener<V,E>(this));
+
+		loop = new Loop(this);
 	}
 
 	public void loop()
 	{
 		try
 		{
-			mover.move(graph);
-			canv.repaint();
-			Thread.sleep(delay);
+			if (parked())
+				return;
+
+			if (sweeps > 0 && made >= sweeps)
+			{
+				long wait = (frame - System.nanoTime()) / 1000000L;
+				if (wait > 0)
+					Thread.sleep(wait);
+				publish();
+			}
+
+			double delta = mover.move(graph);
+			made++;
+
+			if (sweeps <= 0 && System.nanoTime() >= frame)
+				publish();
+
+			if (delta <= tolerance * Math.max(1,GraphLocator.swept(graph)))
+			{
+				if (parking && idle >= maxidle)
+				{
+					publish();
+					park();
+					return;
+				}
+				idle = Math.min(maxidle, idle > 0 ? 2*idle : delay);
+				Thread.sleep(idle);
+			}
+			else
+			{
+				idle = 0;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// The loop has been finished.
 		}
 		catch (ConcurrentModificationException e)
 		{
@@ -47,6 +111,40 @@ public class GraphAnimator<V,E> implements SafeRunnable
 		}
 	}
 
+/**
+	Starts the layout again if it has stopped because it settled.
+*/
+	synchronized public void wake()
+	{
+		idle = 0;
+		if (parked)
+		{
+			parked = false;
+			notifyAll();
+		}
+	}
+
+/**
+	Sets whether the thread stops once the layout has settled. 
+	This is on by default.
+*/
+	public void setParking(boolean b)
+	{
+		parking = b;
+		if (!b)
+			wake();
+	}
+
+	public boolean isParking()
+	{
+		return parking;
+	}
+
+	public boolean isParked()
+	{
+		return parked;
+	}
+
 	public ActiveCanvas getCanvas()
 	{
 		return canv;
@@ -66,6 +164,7 @@ public class GraphAnimator<V,E> implements SafeRunnable
 	{
 		graph = g;
 		canv.setPainter(graph);
+		wake();
 	}
 
 	public GraphLocator<V,E> getLocator()
@@ -76,6 +175,7 @@ public class GraphAnimator<V,E> implements SafeRunnable
 	public void setLocator(GraphLocator<V,E> m)
 	{
 		mover = m;
+		wake();
 	}
 
 	public int getPause()
@@ -86,6 +186,68 @@ public class GraphAnimator<V,E> implements SafeRunnable
 	public void setPause(int p)
 	{
 		delay = p;
+		wake();
+	}
+
+/**
+	Sets the number of sweeps of the locator made for each frame.
+	If this is zero, as it is by default, sweeps are made without a
+	break and a frame is published every pause time.
+*/
+	public void setSweeps(int n)
+	{
+		sweeps = n;
+		wake();
+	}
+
+	public int getSweeps()
+	{
+		return sweeps;
+	}
+
+/**
+	Sets the mean squared distance moved by a vertex in a sweep
+	below which the layout is taken to have settled.
+*/
+	public void setTolerance(double t)
+	{
+		tolerance = t;
+		wake();
+	}
+
+	public double getTolerance()
+	{
+		return tolerance;
+	}
+
+/**
+	Sets the longest time, in milliseconds, that will be added
+	between frames once the layout has settled.
+*/
+	public void setMaxIdle(int m)
+	{
+		maxidle = m;
+		wake();
+	}
+
+	public int getMaxIdle()
+	{
+		return maxidle;
+	}
+
+/**
+	Sets the time, in milliseconds, between checks for changes
+	once the layout has stopped.
+*/
+	public void setPoll(int p)
+	{
+		poll = Math.max(1,p);
+		wake();
+	}
+
+	public int getPoll()
+	{
+		return poll;
 	}
 
 // Private data.
@@ -95,4 +257,77 @@ public class GraphAnimator<V,E> implements SafeRunnable
 	private ActiveCanvas canv = null;
 	private Loop loop = null;
 	private int delay = 40;
+	private int sweeps = 0;
+	private double tolerance = 0.0001;
+	private int maxidle = 500;
+	private int poll = 250;
+	private long idle = 0;
+	private long frame = 0;
+	private int made = 0;
+
+	private boolean parking = true;
+	private volatile boolean parked = false;
+	private long stamp = 0;
+	private double[] values = null;
+
+	// Hands the coordinates to the graph for painting and asks for a
+	// repaint. The next frame is due one pause time later.
+
+	private void publish()
+	{
+		graph.publish();
+		canv.repaint();
+		made = 0;
+		frame = System.nanoTime() + delay * 1000000L;
+	}
+
+	// Stops the layout until wake() is called or a change is seen.
+	// Notes the graph's change count and the locator's parameter
+	// values to compare against.
+
+	synchronized private void park()
+	{
+		graph.sync();
+		stamp = graph.changes();
+		values = values(mover);
+		parked = true;
+		canv.repaint();
+	}
+
+	// Waits for up to the poll time if parked, then checks whether
+	// anything has changed. Returns true if still parked, so that the
+	// loop comes back here after checking whether the thread has been
+	// stopped.
+
+	synchronized private boolean parked() throws InterruptedException
+	{
+		if (!parked)
+			return false;
+
+		wait(poll);
+
+		if (parked)
+		{
+			graph.sync();
+			if (graph.changes() == stamp && Arrays.equals(values(mover),values))
+				return true;
+
+			parked = false;
+			idle = 0;
+		}
+
+		return false;
+	}
+
+	private double[] values(GraphLocator<V,E> m)
+	{
+		Parameter[] p = m.getParameters();
+		if (p == null)
+			return null;
+
+		double[] v = new double[p.length];
+		for (int i=0; i<p.length; i++)
+			v[i] = p[i].getValue();
+		return v;
+	}
 }
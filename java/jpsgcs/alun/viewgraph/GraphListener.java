@@ -18,22 +18,24 @@ public class GraphListener<V,E> extends MouseKeyListener
 
 	public void keyPressed(KeyEvent e)
 	{
+		a.wake();
+
 		if (!e.isShiftDown())
 			return;
 
  		switch(e.getKeyCode())
 		{
 		case KeyEvent.VK_DOWN:
-			scale(a.getGraph().getCoords(), scaledown, scaledown);
+			a.getGraph().scale(scaledown, scaledown);
 			break;
 		case KeyEvent.VK_UP:
-			scale(a.getGraph().getCoords(), scaleup, scaleup);
+			a.getGraph().scale(scaleup, scaleup);
 			break;
 		case KeyEvent.VK_LEFT:
-			rotate(a.getGraph().getCoords(), -rotation);
+			a.getGraph().rotate(-rotation);
 			break;
 		case KeyEvent.VK_RIGHT:
-			rotate(a.getGraph().getCoords(), +rotation);
+			a.getGraph().rotate(+rotation);
 			break;
 		case KeyEvent.VK_DELETE:
 			a.getLoop().flip();
@@ -45,6 +47,8 @@ public class GraphListener<V,E> extends MouseKeyListener
 
 	public void mouseClicked(MouseEvent e)
 	{
+		a.wake();
+
 		if (!e.isControlDown())
 		{
 			if (e.getClickCount() == 2)
@@ -128,6 +132,8 @@ public class GraphListener<V,E> extends MouseKeyListener
 
 	public void mouseReleased(MouseEvent e)
 	{
+		a.wake();
+
 		if (e.isControlDown())
 			return;
 
@@ -142,12 +148,15 @@ public class GraphListener<V,E> extends MouseKeyListener
 			shift(points, e.getX()-x, e.getY()-y);
 		}
 
+		a.getGraph().sync();
 		points = null;
 		a.getCanvas().repaint();
 	}
 
 	public void mousePressed(MouseEvent e)
 	{
+		a.wake();
+
 		if (e.isControlDown())
 			return;
 
@@ -176,6 +185,8 @@ public class GraphListener<V,E> extends MouseKeyListener
 
 	public void mouseDragged(MouseEvent e)
 	{
+		a.wake();
+
 		if (e.isControlDown())
 			return;
 
@@ -190,6 +201,7 @@ public class GraphListener<V,E> extends MouseKeyListener
 			shift(points,e.getX()-x, e.getY()-y);
 		}
 
+		a.getGraph().sync();
 		x = e.getX();
 		y = e.getY();
 		a.getCanvas().repaint();
@@ -214,27 +226,6 @@ public class GraphListener<V,E> extends MouseKeyListener
 		}
 	}
 
-	private void scale(Collection<Coord> c, double s, double t)
-	{
-		for (Coord p : c)
-		{
-			p.x *= s;
-			p.y *= t;
-		}
-	}
-
-	private void rotate(Collection<Coord> c, double s)
-	{
-		for (Coord p : c)
-		{
-			double  r = Math.sqrt(p.x*p.x + p.y*p.y);
-			double t = Math.atan2(p.y,p.x);
-			t += s;
-			p.x = r * Math.cos(t);
-			p.y = r * Math.sin(t);
-		}
-	}
-
 	private void fix(Collection<Coord> c, boolean b)
 	{
 		for (Coord p : c)
@@ -52,10 +52,19 @@ public class GraphPanel<V,E> extends Panel
 		int j = 0;
 
 		p.setLayout(new GridLayout(len,1));
+
+		AdjustmentListener waker = new AdjustmentListener()
+		{
+			public void adjustmentValueChanged(AdjustmentEvent e)
+			{
+				ann.wake();
+			}
+		};
 		
 		for (int i=0; i<par.length; i++)
 		{
 			w[j] = new ParameterScrollWidget(par[i]);
+			w[j].addAdjustmentListener(waker);
 			p.add(w[j].getPanel());
 			j++;
 		}
@@ -64,6 +73,7 @@ public class GraphPanel<V,E> extends Panel
 			for (int i=0; i<extras.length; i++)
 			{
 				w[j] = new ParameterScrollWidget(extras[i]);
+				w[j].addAdjustmentListener(waker);
 				p.add(w[j].getPanel());
 				j++;
 			}
@@ -86,6 +96,15 @@ public class GraphPanel<V,E> extends Panel
 		return w;
 	}
 
+/**
+	Starts the layout again at once if it has stopped because it
+	settled, rather than when the next check for changes is made.
+*/
+	public void wake()
+	{
+		ann.wake();
+	}
+
 	public PaintableGraph<V,E> getGraph()
 	{
 		return graph;
@@ -1,16 +1,30 @@
 package jpsgcs.alun.viewgraph;
 
 import jpsgcs.alun.graph.Graph;
-import jpsgcs.alun.graph.LocatedMaskedGraph;
+import jpsgcs.alun.graph.ArrayLocatedGraph;
+import jpsgcs.alun.graph.CoordArray;
+import jpsgcs.alun.graph.CSRGraph;
 import jpsgcs.alun.animate.Paintable;
-import jpsgcs.alun.graph.Coord;
+import jpsgcs.alun.animate.ShapeBatch;
 import java.util.Map;
+import java.util.BitSet;
 import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.PrintGraphics;
+import java.awt.Rectangle;
 import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
-public class PaintableGraph<V,E> extends LocatedMaskedGraph<V,E> implements Paintable, MakesRepresentation<V>
+public class PaintableGraph<V,E> extends ArrayLocatedGraph<V,E> implements Paintable, MakesRepresentation<V>
 {
 	public PaintableGraph(Graph<V,E> g, Map<V,VertexRepresentation> map, MakesRepresentation<V> rm)
 	{
@@ -63,61 +77,138 @@ public class PaintableGraph<V,E> extends LocatedMaskedGraph<V,E> implements Pain
 	{
 		Collection<V> verts = getVertices();
 		if (verts != null)
+		{
+			CoordArray c = coords();
+			double[] cx = c.x;
+			double[] cy = c.y;
 			for (V v: verts)
 			{
-				Coord pv = getCoord(v);
-				if (getRepresentation(v).contains(pv.x - x, pv.y - y))
+				int i = indexOf(v);
+				if (i >= 0 && i < cx.length && getRepresentation(v).contains(cx[i] - x, cy[i] - y))
 					return v;
 			}
+		}
 		return null;
 	}
 
-	public void paint(Graphics g)
+/**
+	Sets the scale, in pixels per unit, below which the graph is drawn
+	in outline: vertices as single points and edges merged into one
+	line for each pair of small blocks of pixels that they join.
+	Set it to zero to always draw the graph in full.
+*/
+	public void setDetailScale(double s)
 	{
-		Collection<V> verts = getVertices();
+		detail = s;
+	}
+
+/**
+	Sets how far, in graph units, a vertex can be outside the visible
+	area and still be drawn. It should be at least as large as half the
+	width of the biggest vertex representation.
+*/
+	public void setCullingMargin(double m)
+	{
+		margin = m;
+	}
+
+/**
+	Copies the coordinates into a frame for paint() to draw from, so that
+	a layout thread can go on moving the vertices while the frame is being
+	painted. paint() draws the last frame published until something other
+	than a layout sweep changes, such as a vertex being dragged or the
+	graph changing, and then draws the live coordinates again.
+	Two frames are kept, and the arrays of the older one are reused
+	unless it is still being painted.
+*/
+	synchronized public void publish()
+	{
+		sync();
+		CoordArray c = coords();
+		int n = c.size();
+
+		Frame f = back;
+		if (f == null || f.users.get() != 0 || f.x.length < n)
+			f = new Frame(Math.max(16,n+n/2));
+		f.stamp = changes();
+		System.arraycopy(c.x,0,f.x,0,n);
+		System.arraycopy(c.y,0,f.y,0,n);
 
-		if (verts == null)
+		back = front;
+		front = f;
+	}
+
+/**
+	Paints the parts of the graph that can be seen through the transform
+	and clip of the given Graphics. Vertices and edges that lie wholly
+	outside the visible area are not drawn.
+*/
+	public void paint(Graphics g)
+	{
+		CSRGraph s = snapshot();
+		if (s == null)
 			return;
 
-		for (V v: verts)
+		sync();
+		Frame f = acquire();
+		try
+		{
+			CoordArray c = coords();
+			if (f != null && f.stamp == changes())
+				paint(g,s,c,f.x,f.y);
+			else
+				paint(g,s,c,c.x,c.y);
+		}
+		finally
+		{
+			if (f != null)
+				f.users.decrementAndGet();
+		}
+	}
+
+	private void paint(Graphics g, CSRGraph s, CoordArray c, double[] x, double[] y)
+	{
+		double[] view = viewport(g);
+
+		if (view != null && detail > 0 && !(g instanceof PrintGraphics))
 		{
-			Coord pv = getCoord(v);
-			if (pv.v)
+			AffineTransform t = ((Graphics2D)g).getTransform();
+			if (Math.sqrt(Math.abs(t.getDeterminant())) < detail)
 			{
-				for (V u: outNeighbours(v))
-				{
-					Coord pu = getCoord(u);
-					if (pu.v)
-					{
-						Color col = Color.black;
-						E con = connection(v,u);
-						if (con instanceof Color)
-							col = (Color) con;
-		
-						if (arrows && isDirected())
-							arrow(g,pv.x,pv.y,pu.x,pu.y,col);
-						else
-							line(g,pv.x,pv.y,pu.x,pu.y,col);
-					}
-				}
+				outline((Graphics2D)g,s,x,y,c.v,view);
+				return;
 			}
 		}
 
-		for (V v: verts)
+		if (view == null)
+			view = new double[] {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+
+		boolean arr = arrows && s.isDirected();
+
+		// Edges drawn into an image are collected and drawn together.
+
+		if (g instanceof Graphics2D && !(g instanceof PrintGraphics))
 		{
-			Coord pv = getCoord(v);
-			if (pv.v)
+			synchronized (batch)
 			{
-				VertexRepresentation nv = getRepresentation(v);
-			//	nv.paint(g,pv.x,pv.y, getNeighbours(v).containsAll(completeGraph().getNeighbours(v)));
-				Collection<? extends V> nall = completeGraph().getNeighbours(v);
-				Collection<V> nshow = getNeighbours(v);
-				boolean comp = true;
-				if (nall != null && nshow != null)
-					comp = nshow.containsAll(nall);
-				nv.paint(g,pv.x,pv.y,comp);
+				edges(g,batch,s,x,y,c.v,view,arr);
+				batch.draw((Graphics2D)g);
 			}
 		}
+		else
+		{
+			edges(g,null,s,x,y,c.v,view,arr);
+		}
+
+		BitSet inc = incomplete(s);
+
+		int[] vs = s.vertices;
+		for (int k=0; k<vs.length; k++)
+		{
+			int i = vs[k];
+			if (i < x.length && c.v.get(i) && inside(view,x[i],y[i],margin))
+				getRepresentation(vertex(i)).paint(g,x[i],y[i],!inc.get(i));
+		}
 	}
 
 	public Map<V,VertexRepresentation> getMap()
@@ -151,6 +242,383 @@ public class PaintableGraph<V,E> extends LocatedMaskedGraph<V,E> implements Pain
 	private double arrht = 2.0;
 	private double ends = 0.5;
 
+	private double detail = 0.25;
+	private double margin = 100;
+	private int block = 3;
+	private int maxlines = 1<<14;
+
+	private ShapeBatch batch = new ShapeBatch();
+
+	private volatile Frame front = null;
+	private volatile Frame back = null;
+
+	private CSRGraph partcsr = null;
+	private BitSet part = new BitSet();
+
+	private CSRGraph colcsr = null;
+	private Color[] cols = null;
+
+	private BufferedImage ima = null;
+	private long[] pairs = new long[0];
+	private int[] px = new int[0];
+	private int[] py = new int[0];
+	private static final int FAR = Integer.MIN_VALUE;
+
+	// A copy of the coordinates made by publish(), the value of changes()
+	// when it was made, and the number of paints using it.
+
+	private static class Frame
+	{
+		final double[] x;
+		final double[] y;
+		long stamp = 0;
+		final AtomicInteger users = new AtomicInteger();
+
+		Frame(int n)
+		{
+			x = new double[n];
+			y = new double[n];
+		}
+	}
+
+	// Returns the front frame, or null if there is none, counted as
+	// being used. If publish() swaps the frames before the count is
+	// made, the new front one is taken instead, so publish() never
+	// writes to a frame that a paint has started using.
+
+	private Frame acquire()
+	{
+		while (true)
+		{
+			Frame f = front;
+			if (f == null)
+				return null;
+			f.users.incrementAndGet();
+			if (f == front)
+				return f;
+			f.users.decrementAndGet();
+		}
+	}
+
+	// The number of the block that a pixel is in, made from the 16 bit
+	// row and column of the block, offset so that both are positive.
+
+	private long block(int x, int y, int size)
+	{
+		long i = (Math.floorDiv(x,size) + 0x8000) & 0xffff;
+		long j = (Math.floorDiv(y,size) + 0x8000) & 0xffff;
+		return i << 16 | j;
+	}
+
+	// The pixel at the middle of a block from its row or column.
+
+	private int middle(long i, int size)
+	{
+		return (int)(i - 0x8000) * size + size/2;
+	}
+
+	// Draws the edges that can be seen, into the batch if there is one.
+
+	private void edges(Graphics g, ShapeBatch batch, CSRGraph s, double[] x, double[] y, BitSet vis, double[] view, boolean arr)
+	{
+		int[] vs = s.vertices;
+		Color[] cols = colours(s);
+
+		for (int k=0; k<vs.length; k++)
+		{
+			int i = vs[k];
+			if (i >= x.length || !vis.get(i))
+				continue;
+
+			for (int l=s.outOffset(i), lim=s.outOffset(i+1); l<lim; l++)
+			{
+				int j = s.outTarget(l);
+				if (j >= x.length || !vis.get(j) || (!s.isDirected() && j < i))
+					continue;
+
+				if (!crosses(view,x[i],y[i],x[j],y[j]))
+					continue;
+
+				Color col = cols == null || cols[l] == null ? Color.black : cols[l];
+
+				if (batch != null)
+				{
+					if (arr)
+						arrow(batch,x[i],y[i],x[j],y[j],col);
+					else
+						batch.line(col,(int)x[i],(int)y[i],(int)x[j],(int)y[j]);
+				}
+				else
+				{
+					if (arr)
+						arrow(g,x[i],y[i],x[j],y[j],col);
+					else
+						line(g,x[i],y[i],x[j],y[j],col);
+				}
+			}
+		}
+	}
+
+	// Returns the bounds, in graph coordinates, of the area that will be
+	// seen through the Graphics, as {xmin, ymin, xmax, ymax}, or null
+	// if they can't be found. Images have no bounds of their own, so
+	// drawing into one should be clipped to the part that will be shown.
+
+	private double[] viewport(Graphics g)
+	{
+		if (!(g instanceof Graphics2D))
+			return null;
+
+		Graphics2D g2 = (Graphics2D) g;
+		Rectangle2D r = g2.getClipBounds();
+
+		try
+		{
+			if (r == null)
+			{
+				GraphicsConfiguration gc = g2.getDeviceConfiguration();
+				if (gc == null || gc.getBounds().width > 1<<16 || gc.getBounds().height > 1<<16)
+					return null;
+				r = g2.getTransform().createInverse().createTransformedShape(gc.getBounds()).getBounds2D();
+			}
+		}
+		catch (NoninvertibleTransformException e)
+		{
+			return null;
+		}
+
+		return new double[] {r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY()};
+	}
+
+	private boolean inside(double[] r, double x, double y, double m)
+	{
+		return x >= r[0]-m && x <= r[2]+m && y >= r[1]-m && y <= r[3]+m;
+	}
+
+	// Whether the box around the line from (x1,y1) to (x2,y2) meets the area.
+
+	private boolean crosses(double[] r, double x1, double y1, double x2, double y2)
+	{
+		return Math.max(x1,x2) >= r[0] && Math.min(x1,x2) <= r[2] && Math.max(y1,y2) >= r[1] && Math.min(y1,y2) <= r[3];
+	}
+
+	// Returns the set of ids of the shown vertices that have hidden
+	// neighbours. Only the neighbours of the hidden vertices need be
+	// looked at, and the set is kept until the snapshot changes, that is
+	// until the graph changes or a vertex is shown or hidden.
+
+	private BitSet incomplete(CSRGraph s)
+	{
+		if (s == partcsr)
+			return part;
+
+		BitSet b = new BitSet();
+		Graph<V,E> g = completeGraph();
+		for (V h : getHidden())
+		{
+			Collection<? extends V> nh = g.getNeighbours(h);
+			if (nh == null)
+				continue;
+			for (V u : nh)
+			{
+				int i = indexOf(u);
+				if (i >= 0)
+					b.set(i);
+			}
+		}
+
+		part = b;
+		partcsr = s;
+		return b;
+	}
+
+	// Returns the colours of the edges of the snapshot, by their place in
+	// its out rows, or null if none are coloured. Like incomplete(), the
+	// array is kept until the snapshot changes, so that the edges are
+	// looked up once for each snapshot rather than once for each paint.
+
+	private Color[] colours(CSRGraph s)
+	{
+		if (s == colcsr)
+			return cols;
+
+		Color[] c = null;
+		int[] vs = s.vertices;
+		for (int k=0; k<vs.length; k++)
+		{
+			int i = vs[k];
+			for (int l=s.outOffset(i), lim=s.outOffset(i+1); l<lim; l++)
+			{
+				int j = s.outTarget(l);
+				if (!s.isDirected() && j < i)
+					continue;
+
+				E con = connection(vertex(i),vertex(j));
+				if (con instanceof Color)
+				{
+					if (c == null)
+						c = new Color[s.outOffset(s.ids())];
+					c[l] = (Color) con;
+				}
+			}
+		}
+
+		cols = c;
+		colcsr = s;
+		return c;
+	}
+
+	// Draws the graph in pixels. The vertices are put straight into an
+	// image the size of the visible area. The area is split into square
+	// blocks of pixels, and only one line is drawn between the middles of
+	// any two blocks however many edges join them. The blocks are made
+	// bigger until there are few enough lines to draw quickly.
+
+	private void outline(Graphics2D g, CSRGraph s, double[] x, double[] y, BitSet vis, double[] view)
+	{
+		AffineTransform t = g.getTransform();
+		double a = t.getScaleX();
+		double b = t.getShearX();
+		double c = t.getTranslateX();
+		double d = t.getShearY();
+		double e = t.getScaleY();
+		double f = t.getTranslateY();
+
+		Rectangle dev = t.createTransformedShape(new Rectangle2D.Double(view[0],view[1],view[2]-view[0],view[3]-view[1])).getBounds();
+		if (dev.width <= 0 || dev.height <= 0)
+			return;
+
+		int[] vs = s.vertices;
+		int w = dev.width;
+		int h = dev.height;
+
+		// Find the pixels, relative to the visible area, that the vertices
+		// are at. Those so far away that their blocks can't be numbered are
+		// marked, and their edges are drawn as they are.
+
+		if (px.length < x.length)
+		{
+			px = new int[x.length];
+			py = new int[x.length];
+		}
+
+		for (int k=0; k<vs.length; k++)
+		{
+			int i = vs[k];
+			if (i >= x.length)
+				continue;
+			double u = Math.floor(a*x[i]+b*y[i]+c) - dev.x;
+			double v = Math.floor(d*x[i]+e*y[i]+f) - dev.y;
+			boolean far = Math.abs(u) > 1<<16 || Math.abs(v) > 1<<16;
+			px[i] = far ? FAR : (int) u;
+			py[i] = far ? FAR : (int) v;
+		}
+
+		// Find the distinct pairs of blocks joined by edges that can be seen.
+
+		// The table is kept at most half full. Blocks are made bigger
+		// while they give too many lines, and once they are as big as the
+		// area the table is made bigger instead.
+
+		int cap = 4 * maxlines;
+		int size = block;
+		for (boolean full = true; full; )
+		{
+			if (pairs.length < cap)
+				pairs = new long[cap];
+			Arrays.fill(pairs,0,cap,0L);
+			int used = 0;
+			full = false;
+
+			for (int k=0; k<vs.length && !full; k++)
+			{
+				int i = vs[k];
+				if (i >= x.length || px[i] == FAR || !vis.get(i))
+					continue;
+				long p = block(px[i],py[i],size);
+
+				for (int l=s.outOffset(i), lim=s.outOffset(i+1); l<lim; l++)
+				{
+					int j = s.outTarget(l);
+					if (j >= x.length || px[j] == FAR || !vis.get(j) || (!s.isDirected() && j < i) || !crosses(view,x[i],y[i],x[j],y[j]))
+						continue;
+					long q = block(px[j],py[j],size);
+					if (p == q)
+						continue;
+
+					// A directed edge can go either way between the blocks,
+					// so the pair is keyed with the lower block first.
+
+					long key = Math.min(p,q) << 32 | Math.max(p,q);
+					int m = (int)((key ^ key >>> 31) * 0x9E3779B97F4A7C15L >>> 40) & (cap-1);
+					while (pairs[m] != 0 && pairs[m] != key)
+						m = (m+1) & (cap-1);
+					if (pairs[m] == key)
+						continue;
+
+					pairs[m] = key;
+					if (++used > maxlines && size < Math.max(w,h))
+					{
+						full = true;
+						size *= 2;
+						break;
+					}
+					if (used >= cap/2)
+					{
+						full = true;
+						cap *= 2;
+						break;
+					}
+				}
+			}
+		}
+
+		g.setTransform(new AffineTransform());
+		g.setColor(Color.lightGray);
+
+		for (int m=0; m<cap; m++)
+		{
+			if (pairs[m] == 0)
+				continue;
+			long p = pairs[m] >>> 32;
+			long q = pairs[m] & 0xffffffffL;
+			g.drawLine(dev.x + middle(p>>>16,size), dev.y + middle(p&0xffff,size), dev.x + middle(q>>>16,size), dev.y + middle(q&0xffff,size));
+		}
+
+		for (int k=0; k<vs.length; k++)
+		{
+			int i = vs[k];
+			if (i >= x.length || !vis.get(i))
+				continue;
+
+			for (int l=s.outOffset(i), lim=s.outOffset(i+1); l<lim; l++)
+			{
+				int j = s.outTarget(l);
+				if (j >= x.length || !vis.get(j) || (!s.isDirected() && j < i) || (px[i] != FAR && px[j] != FAR) || !crosses(view,x[i],y[i],x[j],y[j]))
+					continue;
+				g.drawLine((int)(a*x[i]+b*y[i]+c), (int)(d*x[i]+e*y[i]+f), (int)(a*x[j]+b*y[j]+c), (int)(d*x[j]+e*y[j]+f));
+			}
+		}
+
+		// Put the vertices into the image.
+
+		if (ima == null || ima.getWidth() != w || ima.getHeight() != h)
+			ima = new BufferedImage(w,h,BufferedImage.TYPE_INT_ARGB);
+		int[] pix = ((DataBufferInt)ima.getRaster().getDataBuffer()).getData();
+		Arrays.fill(pix,0);
+
+		int black = Color.black.getRGB();
+		for (int k=0; k<vs.length; k++)
+		{
+			int i = vs[k];
+			if (i < x.length && vis.get(i) && px[i] >= 0 && px[i] < w && py[i] >= 0 && py[i] < h)
+				pix[py[i]*w+px[i]] = black;
+		}
+
+		g.drawImage(ima,dev.x,dev.y,null);
+		g.setTransform(t);
+	}
+
 	private void line(Graphics g, double x1, double y1, double x2, double y2)
 	{
 		line(g,x1,y1,x2,y2,Color.black);
@@ -167,6 +635,22 @@ public class PaintableGraph<V,E> extends LocatedMaskedGraph<V,E> implements Pain
 		arrow(g,x1,y1,x2,y2,Color.black);
 	}
 
+	private void arrow(ShapeBatch b, double x1, double y1, double x2, double y2, Color c)
+	{
+		b.line(c,(int)x1,(int)y1,(int)x2,(int)y2);
+
+		int sg = x1 < x2 ? 1 : -1;
+		double th = Math.atan((y2-y1)/(x2-x1));
+		double s = arrbs * Math.cos(th);
+		double t = arrbs * Math.sin(th);
+		double x = ends * x1 + (1-ends) * x2;
+		double y = ends * y1 + (1-ends) * y2;
+		int[] xx = {(int)(x-t), (int)(x+t), (int)(x + arrht*s*sg)};
+		int[] yy = {(int)(y+s), (int)(y-s), (int)(y + arrht*t*sg)};
+
+		b.polygon(Color.white,Color.black,xx,yy,3);
+	}
+
 	private void arrow(Graphics g, double x1, double y1, double x2, double y2, Color c)
 	{
 		line(g,x1,y1,x2,y2,c);
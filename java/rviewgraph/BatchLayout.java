@@ -0,0 +1,242 @@
+package rviewgraph;
+
+import jpsgcs.alun.graph.Network;
+import jpsgcs.alun.graph.ArrayLocatedGraph;
+import jpsgcs.alun.graph.GraphLocator;
+import jpsgcs.alun.graph.RootedLocalLocator;
+import jpsgcs.alun.graph.LocalLocator;
+import jpsgcs.alun.graph.DAGLocator;
+import jpsgcs.alun.graph.BarnesHutLocator;
+import jpsgcs.alun.graph.LayoutRunner;
+import jpsgcs.alun.markov.Parameter;
+import jpsgcs.alun.viewgraph.PaintableGraph;
+import jpsgcs.alun.animate.ImageBuffer;
+import jpsgcs.alun.util.IntLines;
+import jpsgcs.alun.util.IntListReader;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.io.PrintWriter;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+
+/**
+	Lays out a graph without a display. The graph is read as an edge list,
+	two integer vertex numbers per line, as for RViewGraph, and the
+	vertices are numbered from 0 to the largest number read. The input
+	may be gzipped. The chosen
+	locator is run with no pause between sweeps until it converges or
+	the budget of sweeps is spent, and the coordinates are written out
+	one vertex per line as "vertex x y".
+
+	Usage: java rviewgraph.BatchLayout [options] [input [output]]
+
+	With no input or output file the standard input and output are used.
+	The options are:
+
+		-locator name	rooted (the default), local, dag or barneshut
+		-sweeps n	the most sweeps to make, default 10000
+		-threshold t	stop at this mean squared step per vertex, default 0.01
+		-multilevel	start from a multilevel layout
+		-parallel	use parallel sweeps where the locator can
+		-directed	read the edges as directed
+		-set name=value	set a locator parameter, eg -set Repulsion=50
+		-png file	also draw the layout into a PNG image file
+		-size wxh	the size of the image, default 1000x1000
+*/
+
+public class BatchLayout
+{
+	public static void main(String[] args)
+	{
+		try
+		{
+			String loc = "rooted";
+			int sweeps = 10000;
+			double threshold = 0.01;
+			boolean multilevel = false;
+			boolean parallel = false;
+			boolean directed = false;
+			String in = null;
+			String out = null;
+			String png = null;
+			int width = 1000;
+			int height = 1000;
+			StringBuffer settings = new StringBuffer();
+
+			for (int i=0; i<args.length; i++)
+			{
+				if (args[i].equals("-locator"))
+					loc = args[++i];
+				else if (args[i].equals("-sweeps"))
+					sweeps = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-threshold"))
+					threshold = Double.parseDouble(args[++i]);
+				else if (args[i].equals("-multilevel"))
+					multilevel = true;
+				else if (args[i].equals("-parallel"))
+					parallel = true;
+				else if (args[i].equals("-directed"))
+					directed = true;
+				else if (args[i].equals("-set"))
+					settings.append(args[++i]).append(" ");
+				else if (args[i].equals("-png"))
+					png = args[++i];
+				else if (args[i].equals("-size"))
+				{
+					String[] wh = args[++i].split("x");
+					if (wh.length != 2)
+						usage("Bad image size "+args[i]);
+					width = Integer.parseInt(wh[0]);
+					height = Integer.parseInt(wh[1]);
+				}
+				else if (args[i].startsWith("-"))
+					usage("Unknown option "+args[i]);
+				else if (in == null)
+					in = args[i];
+				else if (out == null)
+					out = args[i];
+				else
+					usage("Too many arguments");
+			}
+
+			GraphLocator<Integer,Object> locator = makeLocator(loc);
+			if (locator == null)
+				usage("Unknown locator "+loc);
+
+			for (String s : settings.toString().trim().split(" "))
+				if (s.length() > 0)
+					set(locator,s);
+
+			locator.setParallel(parallel);
+
+			// Read the edges.
+
+			IntLines lines = IntListReader.read(in,Runtime.getRuntime().availableProcessors());
+			Network<Integer,Object> net = new Network<Integer,Object>(directed);
+
+			int n = 0;
+			for (int i=0; i<lines.lines(); i++)
+			{
+				if (lines.end(i) == lines.start(i))
+					usage("Need two vertices on each line");
+				int f = lines.first(i);
+				int t = lines.get(lines.start(i));
+				for ( ; n <= Math.max(f,t); n++)
+					net.add(n);
+				net.connect(f,t);
+			}
+
+			// Lay it out.
+
+			ArrayLocatedGraph<Integer,Object> g = png == null ? new ArrayLocatedGraph<Integer,Object>(net) : new PaintableGraph<Integer,Object>(net);
+			locator.set(g);
+
+			LayoutRunner<Integer,Object> runner = new LayoutRunner<Integer,Object>(locator);
+			runner.setSweeps(sweeps);
+			runner.setThreshold(threshold);
+			runner.setMultilevel(multilevel);
+
+			long time = System.currentTimeMillis();
+			int k = runner.run(g);
+			time = System.currentTimeMillis() - time;
+
+			System.err.println("BatchLayout: "+n+" vertices, "+k+" sweeps in "+time+" ms, last move "+runner.getDelta()+(runner.converged() ? "" : ", not converged"));
+
+			// Write the coordinates.
+
+			PrintWriter w = new PrintWriter(new BufferedWriter(out == null ? new OutputStreamWriter(System.out) : new FileWriter(out)));
+			for (int i=0; i<n; i++)
+				w.println(i+" "+g.getX(i)+" "+g.getY(i));
+			w.flush();
+			w.close();
+
+			// Draw the picture.
+
+			if (png != null)
+			{
+				ImageBuffer b = new ImageBuffer();
+				b.render((PaintableGraph<Integer,Object>)g,fit(g,n,width,height),width,height,new Color(255,255,210));
+				b.writePNG(png);
+			}
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+// Private methods.
+
+	private static GraphLocator<Integer,Object> makeLocator(String s)
+	{
+		if (s.equals("rooted"))
+			return new RootedLocalLocator<Integer,Object>();
+		if (s.equals("local"))
+			return new LocalLocator<Integer,Object>();
+		if (s.equals("dag"))
+			return new DAGLocator<Integer,Object>();
+		if (s.equals("barneshut"))
+			return new BarnesHutLocator<Integer,Object>();
+		return null;
+	}
+
+	// Returns a transform that fits the first n vertices into
+	// an image of the given size, with a margin round the edge.
+
+	private static AffineTransform fit(ArrayLocatedGraph<Integer,Object> g, int n, int width, int height)
+	{
+		double minx = Double.POSITIVE_INFINITY;
+		double maxx = Double.NEGATIVE_INFINITY;
+		double miny = Double.POSITIVE_INFINITY;
+		double maxy = Double.NEGATIVE_INFINITY;
+
+		for (int i=0; i<n; i++)
+		{
+			minx = Math.min(minx,g.getX(i));
+			maxx = Math.max(maxx,g.getX(i));
+			miny = Math.min(miny,g.getY(i));
+			maxy = Math.max(maxy,g.getY(i));
+		}
+
+		AffineTransform t = new AffineTransform();
+		if (n == 0)
+			return t;
+
+		int margin = 40;
+		double s = Math.min((width-2*margin)/Math.max(1,maxx-minx), (height-2*margin)/Math.max(1,maxy-miny));
+		t.translate(width/2.0,height/2.0);
+		t.scale(s,s);
+		t.translate(-(minx+maxx)/2,-(miny+maxy)/2);
+		return t;
+	}
+
+	private static void set(GraphLocator<Integer,Object> loc, String s)
+	{
+		int i = s.indexOf('=');
+		if (i < 0)
+			usage("Bad parameter setting "+s);
+
+		String name = s.substring(0,i);
+		for (Parameter p : loc.getParameters())
+		{
+			if (p.name().equals(name))
+			{
+				p.setValue(Double.parseDouble(s.substring(i+1)));
+				return;
+			}
+		}
+
+		usage("Unknown parameter "+name);
+	}
+
+	private static void usage(String s)
+	{
+		System.err.println(s);
+		System.err.println("Usage: java rviewgraph.BatchLayout [-locator rooted|local|dag|barneshut] [-sweeps n] [-threshold t]");
+		System.err.println("\t[-multilevel] [-parallel] [-directed] [-set name=value] [-png file [-size wxh]] [input [output]]");
+		System.exit(1);
+	}
+}
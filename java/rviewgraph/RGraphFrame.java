@@ -66,9 +66,15 @@ public class RGraphFrame extends Frame implements WindowListener
 	{
 		setVisible(true);
 		pan.getLoop().start();
+		pan.wake();
 		running = true;
 	}
 
+	public void wake()
+	{
+		pan.wake();
+	}
+
 	public boolean isRunning()
 	{
 		return running;
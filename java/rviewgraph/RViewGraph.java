@@ -1,15 +1,17 @@
 package rviewgraph;
 
-import jpsgcs.alun.graph.Coord;
-import jpsgcs.alun.graph.Network;
+import jpsgcs.alun.graph.IntNetwork;
 import jpsgcs.alun.viewgraph.PaintableGraph;
 import jpsgcs.alun.viewgraph.StringNode;
 import jpsgcs.alun.viewgraph.VertexRepresentation;
 import jpsgcs.alun.animate.PaperTypes;
+import jpsgcs.alun.util.IntArray;
+import jpsgcs.alun.util.IntListReader;
+
+import java.io.IOException;
 
 import java.util.Map;
 import java.util.LinkedHashMap;
-import java.util.Vector;
 import java.util.Random;
 import java.awt.Color;
 import java.awt.Graphics;
@@ -24,26 +26,25 @@ public class RViewGraph
 		{
 			Random rand = new Random();
 
-			jpsgcs.alun.util.InputFormatter fin = new jpsgcs.alun.util.InputFormatter();
-			
-			Vector<Integer> from = new Vector<Integer>();
-			Vector<Integer> to = new Vector<Integer>();
+			IntListReader fin = new IntListReader(System.in);
+			IntArray line = new IntArray();
+			IntArray from = new IntArray();
+			IntArray to = new IntArray();
 
-			while (fin.newLine())
+			while (fin.nextLine(line))
 			{
-				from.add(fin.nextInt());
-				to.add(fin.nextInt());
+				if (line.size() < 2)
+					throw new IOException("Need two vertices on each line");
+				from.add(line.get(0));
+				to.add(line.get(1));
 			}
 
-			int[] f = new int[from.size()];
-			int[] t = new int[to.size()];
+			int[] f = from.toArray();
+			int[] t = to.toArray();
 			int n = 0;
 
-			for (int i = 0; i<from.size();  i++)
+			for (int i = 0; i<f.length;  i++)
 			{
-				f[i] = from.get(i).intValue();
-				t[i] = to.get(i).intValue();
-
 				if (n < f[i])
 					n = f[i];
 				if (n < t[i]) 
@@ -83,6 +84,7 @@ public class RViewGraph
 				System.err.println("\tand key input from the user to control the display and edit the graph.");
 				System.err.println("\tIt will not, and is not intended to, function in a headless environment");
 				System.err.println("\tthat does not support a display device, keyboard or mouse.");
+				System.err.println("\tTo compute a layout without a display use rviewgraph.BatchLayout.");
 				System.exit(0);
 			}
 
@@ -101,7 +103,7 @@ public class RViewGraph
 	{
 		v = vv;
 
-		Network<Integer,Object> net = new Network<Integer,Object>(directed);
+		IntNetwork net = new IntNetwork(directed);
 		Map<Integer,VertexRepresentation> map = new LinkedHashMap<Integer,VertexRepresentation>();
 
 		//for (int i=0; i<v.length; i++)
@@ -114,8 +116,7 @@ public class RViewGraph
 			map.put(i,nod);
 		}
 
-		for (int i=0; i<fr.length; i++)
-			net.connect(fr[i],to[i]);
+		net.connect(fr,to,fr.length);
 
 		g = new PaintableGraph<Integer,Object>(net,map);
 
@@ -136,18 +137,16 @@ public class RViewGraph
 	public void setCoords(double[] x, double[] y)
 	{
 		for (int i=0; i<v.length; i++)
-		{
-			Coord p = g.getCoord(i);
-			p.x = x[i];
-			p.y = y[i];
-		}
+			g.setCoord(i,x[i],y[i]);
+		if (rgf != null)
+			rgf.wake();
 	}
 
 	public double[] getXCoords()
 	{
 		double[] x = new double[v.length];
 		for (int i=0; i<x.length; i++)
-			x[i] = g.getCoord(i).x;
+			x[i] = g.getX(i);
 		return x;
 	}
 
@@ -155,7 +154,7 @@ public class RViewGraph
 	{
 		double[] x = new double[v.length];
 		for (int i=0; i<x.length; i++)
-			x[i] = g.getCoord(i).y;
+			x[i] = g.getY(i);
 		return x;
 	}
 
@@ -1,19 +1,31 @@
 package rviewgraph;
 
-import jpsgcs.alun.graph.Coord;
-import jpsgcs.alun.graph.Network;
+import jpsgcs.alun.graph.IntNetwork;
+import jpsgcs.alun.graph.ConcurrentIntNetwork;
+import jpsgcs.alun.graph.MappedGraph;
 import jpsgcs.alun.viewgraph.PaintableGraph;
 import jpsgcs.alun.viewgraph.StringNode;
 import jpsgcs.alun.viewgraph.VertexRepresentation;
 import jpsgcs.alun.animate.PaperTypes;
-
+import jpsgcs.alun.util.IntArray;
+
+import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Map;
 import java.util.LinkedHashMap;
-import java.util.Set;
 import java.util.Vector;
 import java.util.Random;
-import java.util.List;
-import java.util.LinkedList;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.PrintJob;
@@ -21,7 +33,7 @@ import java.awt.Toolkit;
 
 public class Rvg
 {
-	private Network<Integer,Object> net = null;
+	private IntNetwork net = null;
 	private Map<Integer,VertexRepresentation> map = null;
 	private PaintableGraph<Integer,Object> pgr = null;
 	private RGraphFrame rgf = null;
@@ -36,17 +48,65 @@ public class Rvg
 
 	public Rvg(boolean directed, boolean running, boolean nogui)
 	{
-		net = new Network<Integer,Object>(directed);
+		net = new ConcurrentIntNetwork(directed);
 		map = new LinkedHashMap<Integer,VertexRepresentation>();
 		pgr = new PaintableGraph<Integer,Object>(net,map);
 		rgf = nogui ? null : new RGraphFrame(pgr,directed,running,wd,ht);
 	}
 
+/**
+	Views a graph file made by build(), with the coordinates kept in the
+	given coordinate file, or on the heap only if it is null. The
+	vertices are 0 to n-1 and are their own ids in the layout, so
+	getOrder() gives them in order. A mapped graph cannot be changed, so
+	the methods that change or query the edges throw an
+	UnsupportedOperationException. The coordinates and appearance can
+	be used as for other graphs, and saveCoords() writes the layout back
+	to the coordinate file.
+*/
+	public Rvg(String graphfile, String coordfile, boolean running, boolean nogui) throws IOException
+	{
+		mapped = new MappedGraph(graphfile,coordfile);
+		map = new LinkedHashMap<Integer,VertexRepresentation>();
+		pgr = new PaintableGraph<Integer,Object>(mapped,map);
+		rgf = nogui ? null : new RGraphFrame(pgr,mapped.isDirected(),running,wd,ht);
+	}
+
+/**
+	Reads an edge list and writes a graph file for the constructor above,
+	as MappedGraph.build() does.
+*/
+	public static void build(String edgefile, String graphfile, boolean directed) throws IOException
+	{
+		MappedGraph.build(edgefile,graphfile,directed);
+	}
+
+/**
+	Writes the coordinates of a mapped graph back to its coordinate file.
+	Returns false if there is no coordinate file.
+*/
+	public boolean saveCoords()
+	{
+		if (mapped == null || !mapped.hasCoords())
+			return false;
+		mapped.putCoords(pgr);
+		return true;
+	}
+
+	private MappedGraph mapped = null;
+
+	private IntNetwork graph()
+	{
+		if (net == null)
+			throw new UnsupportedOperationException("A mapped graph cannot be changed or have its edges listed");
+		return net;
+	}
+
 // Methods that change the graph.
 
 	private void add(int i)
 	{
-		net.add(i);
+		graph().add(i);
 		double x = wd/2 + (Math.random()-0.5) * wd/2;
 		double y = ht/2 + (Math.random()-0.5) * ht/2;
 		setCoord(i,x,y);
@@ -62,92 +122,159 @@ public class Rvg
 	public void remove(int[] x)
 	{
 		for (int i : x) 
-			net.remove(i);
+			graph().remove(i);
 		flash();
 	}
 
 	public void connect(int[] x, int[] y)
 	{
-		for (int i=0; i<x.length; i++)
+		load(x,y);
+	}
+
+/**
+	Connects x[i] to y[i] for each i, adding the vertices that are not
+	already in the graph at random positions, as connect() does, but made
+	for loading large graphs in one call. The ends are counted in one pass
+	over primitive arrays, so that each new vertex is made once, with
+	its neighbour lists sized for its degree, and all the new vertices are
+	placed together. The edges are then added in blocks, straight from
+	the arrays, with a single repaint at the end.
+*/
+	public void load(int[] x, int[] y)
+	{
+		int m = Math.min(x.length,y.length);
+
+		// Find the distinct ends, in the order first seen, and their degrees.
+		// The table has room for at least twice as many ends as there are,
+		// rounded up to a power of 2, so that it is never more than half
+		// full. It can have at most 2^30 slots, so at most 2^29 distinct
+		// ends can be loaded at once.
+
+		long want = Math.max(4L*m,16);
+		int cap = want > MAXTABLE ? MAXTABLE : (int) Long.highestOneBit(2*want-1);
+		int[] key = new int[cap];
+		int[] deg = new int[cap];
+		boolean[] used = new boolean[cap];
+		int[] ends = new int[(int)Math.min(2L*m,cap/2)];
+		int n = 0;
+
+		for (int i=0; i<m; i++)
 		{
-			if (!net.contains(x[i]))
-				add(x[i]);
-			if (!net.contains(y[i]))
-				add(y[i]);
-			net.connect(x[i],y[i]);
+			for (int j=0; j<2; j++)
+			{
+				int v = j == 0 ? x[i] : y[i];
+				int h = slot(key,used,cap,v);
+				if (!used[h])
+				{
+					if (n == ends.length)
+						throw new IllegalArgumentException("Too many vertices to load at once: load the edges in parts");
+					used[h] = true;
+					key[h] = v;
+					ends[n++] = h;
+				}
+				deg[h]++;
+			}
 		}
+
+		// Add and place the new vertices.
+
+		graph().reserve(n);
+		pgr.coords().ensureCapacity(pgr.size()+n);
+		Random r = new Random();
+
+		for (int k=0; k<n; k++)
+		{
+			int h = ends[k];
+			int v = key[h];
+			if (graph().add(v,deg[h]))
+			{
+				double a = wd/2 + (r.nextDouble()-0.5) * wd/2;
+				double b = ht/2 + (r.nextDouble()-0.5) * ht/2;
+				pgr.setCoord(v,a,b);
+			}
+		}
+
+		// Add the edges.
+
+		// The blocks let the viewer in between them.
+
+		int block = 8192;
+		int[] from = new int[Math.min(block,m)];
+		int[] to = new int[from.length];
+		for (int i=0; i<m; i+=block)
+		{
+			int k = Math.min(block,m-i);
+			System.arraycopy(x,i,from,0,k);
+			System.arraycopy(y,i,to,0,k);
+			graph().connect(from,to,k);
+		}
+
 		flash();
 	}
 
 	public void disconnect(int[] x, int[] y)
 	{
 		for (int i=0; i<x.length; i++)
-			net.disconnect(x[i],y[i]);
+			graph().disconnect(x[i],y[i]);
 		flash();
 	}
 
 	public void clear()
 	{
-		net.clear();
+		graph().clear();
 		flash();
 	}
 
+	private static final int MAXTABLE = 1<<30;
+
+	// Finds the slot for v in the open addressing table made by load().
+	// The hash is mixed as in IntNetwork, so that the high bits of the
+	// product reach the low bits used for the slot.
+
+	private static int slot(int[] key, boolean[] used, int cap, int v)
+	{
+		int x = v * 0x9E3779B1;
+		int h = (x ^ (x >>> 16)) & (cap-1);
+		while (used[h] && key[h] != v)
+			h = (h+1) & (cap-1);
+		return h;
+	}
+
 // Methods that query the graph.
 
 	public boolean isDirected()
 	{
-		return net.isDirected();
+		return pgr.isDirected();
 	}
 
 	public boolean[] contains(int[] id)
 	{
 		boolean[] b = new boolean[id.length];
 		for (int i=0; i<id.length; i++)
-			b[i] = net.contains(id[i]);
+			b[i] = graph().contains(id[i]);
 		return b;
 	}
 
 	public int[] neighbours(int x)
 	{
-		Set<Integer> n = net.getNeighbours(x);
-		if (n == null)
-			return null;
-		int[] a = new int[n.size()];
-		int i=0;
-		for (Integer y : n)
-			a[i++] = y;
-		return a;
+		return graph().neighbours(x);
 	}
 
 	public int[] outNeighbours(int x)
 	{
-		Set<Integer> n = net.outNeighbours(x);
-		if (n == null)
-			return null;
-		int[] a = new int[n.size()];
-		int i=0;
-		for (Integer y : n)
-			a[i++] = y;
-		return a;
+		return graph().outNeighbours(x);
 	}
 
 	public int[] inNeighbours(int x)
 	{
-		Set<Integer> n = net.inNeighbours(x);
-		if (n == null)
-			return null;
-		int[] a = new int[n.size()];
-		int i=0;
-		for (Integer y : n)
-			a[i++] = y;
-		return a;
+		return graph().inNeighbours(x);
 	}
 
 	public boolean[] connects(int[] x, int[] y)
 	{
 		boolean[] b = new boolean[x.length];
 		for (int i=0; i<x.length; i++)
-			b[i] = net.connects(x[i],y[i]);
+			b[i] = graph().connects(x[i],y[i]);
 		return b;
 	}
 
@@ -162,55 +289,47 @@ public class Rvg
 
 	public int[] getVertices()
 	{
-		int[] b = new int[net.getVertices().size()];
-		int i = 0;
-		for (Integer k : net.getVertices())
-			b[i++] = k;
-		return b;
+		return graph().vertices();
 	}
 
 	public int[] getFrom()
 	{
-		List<Integer> l = new LinkedList<Integer>();
-		for (Integer i : net.getVertices())
-			for (Integer j : net.outNeighbours(i))
-				l.add(i);
-		int[] e = new int[l.size()];
-		int i = 0;
-		for (Integer k : l)
-			e[i++] = k;
-		return e;
+		IntArray l = new IntArray();
+		for (int i : graph().vertices())
+		{
+			int[] n = graph().outNeighbours(i);
+			if (n != null)
+				for (int j=0; j<n.length; j++)
+					l.add(i);
+		}
+		return l.toArray();
 	}
 
 	public int[] getTo()
 	{
-		List<Integer> l = new LinkedList<Integer>();
-		for (Integer i : net.getVertices())
-			for (Integer j : net.outNeighbours(i))
-				l.add(j);
-		int[] e = new int[l.size()];
-		int i = 0;
-		for (Integer k : l)
-			e[i++] = k;
-		return e;
+		IntArray l = new IntArray();
+		for (int i : graph().vertices())
+		{
+			int[] n = graph().outNeighbours(i);
+			if (n != null)
+				for (int j : n)
+					l.add(j);
+		}
+		return l.toArray();
 	}
 
 // Methods that change the vertex coordinates.
 
 	private void setCoord(int id, double x, double y)
 	{
-		Coord p = pgr.getCoord(id);
-		if (p != null)
-		{
-			p.x = x;
-			p.y = y;
-		}
+		pgr.setCoord(id,x,y);
 	}
 
 	public void setCoords(int[] id, double[] x, double[] y)
 	{
 		for (int i=0; i<id.length; i++)
 			setCoord(id[i],x[i],y[i]);
+		flash();
 	}
 
 // Methods that query the vertex coordinates.
@@ -219,7 +338,7 @@ public class Rvg
 	{
 		double[] x = new double[id.length];
 		for (int i=0; i<id.length; i++)
-			x[i] = map.get(id[i]) != null ? pgr.getCoord(id[i]).x : 0;
+			x[i] = map.get(id[i]) != null ? pgr.getX(id[i]) : 0;
 		return x;
 	}
 
@@ -227,10 +346,74 @@ public class Rvg
 	{
 		double[] y = new double[id.length];
 		for (int i=0; i<id.length; i++)
-			y[i] = map.get(id[i]) != null ? pgr.getCoord(id[i]).y : 0;
+			y[i] = map.get(id[i]) != null ? pgr.getY(id[i]) : 0;
 		return y;
 	}
 
+/**
+	Returns the ids of the vertices in the order their coordinates are kept.
+	This is the order used by getCoordBlock(), setCoordBlock() and
+	getCoordBuffer(). It only needs to be got again when vertices have
+	been added or removed. The place of a removed vertex holds
+	Integer.MIN_VALUE, which R reads as NA, until a new vertex takes it.
+*/
+	public int[] getOrder()
+	{
+		int[] id = new int[pgr.size()];
+		for (int i=0; i<id.length; i++)
+		{
+			Integer v = pgr.vertex(i);
+			id[i] = v == null ? Integer.MIN_VALUE : v;
+		}
+		return id;
+	}
+
+/**
+	Returns the coordinates of all the vertices in one block, the n
+	x coordinates followed by the n y coordinates, in the order given
+	by getOrder(). The block is copied straight from the layout arrays.
+*/
+	public double[] getCoordBlock()
+	{
+		int n = pgr.size();
+		double[] b = new double[2*n];
+		pgr.getCoords(n,b,0,b,n);
+		return b;
+	}
+
+/**
+	Sets the coordinates of the first n vertices in the order given by
+	getOrder() from a block of n x coordinates followed by n y coordinates.
+*/
+	public void setCoordBlock(double[] b)
+	{
+		int n = Math.min(b.length/2,pgr.size());
+		pgr.setCoords(n,b,0,b,b.length/2);
+		flash();
+	}
+
+/**
+	Returns a direct buffer, in native byte order, holding the coordinates
+	in the same layout as getCoordBlock(). The same buffer is filled again
+	on each call, and is only made anew when the graph has grown past it,
+	so a caller that keeps the address of its memory can read the
+	coordinates from it. Each call makes one copy, from the layout
+	arrays into this reused buffer.
+*/
+	public ByteBuffer getCoordBuffer()
+	{
+		int n = pgr.size();
+		if (buffer == null || buffer.capacity() < 16*n)
+			buffer = ByteBuffer.allocateDirect(16*Math.max(n,16)).order(ByteOrder.nativeOrder());
+
+		buffer.clear();
+		buffer.limit(16*n);
+		pgr.getCoords(n,buffer.asDoubleBuffer());
+		return buffer;
+	}
+
+	private ByteBuffer buffer = null;
+
 // Methods that change the appearance.
 
 	private StringNode find(int i)
@@ -355,12 +538,196 @@ public class Rvg
 		return s;
 	}
 
+// Methods that save and restore the whole state.
+
+/**
+	Returns the graph, the vertex coordinates, the appearance of the
+	vertices and the set of hidden vertices in a compact binary form
+	that restoreState() can read.
+*/
+	public byte[] saveState() throws IOException
+	{
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		DataOutputStream d = new DataOutputStream(b);
+		writeState(d);
+		d.flush();
+		return b.toByteArray();
+	}
+
+/**
+	Writes the state as for saveState() to the named file.
+*/
+	public void saveState(String file) throws IOException
+	{
+		DataOutputStream d = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),1<<16));
+		try
+		{
+			writeState(d);
+		}
+		finally
+		{
+			d.close();
+		}
+	}
+
+/**
+	Replaces the current state with one made by saveState().
+*/
+	public void restoreState(byte[] b) throws IOException
+	{
+		readState(new DataInputStream(new ByteArrayInputStream(b)));
+	}
+
+/**
+	Replaces the current state with one read from a file made by saveState(String).
+*/
+	public void restoreState(String file) throws IOException
+	{
+		DataInputStream d = new DataInputStream(new BufferedInputStream(new FileInputStream(file),1<<16));
+		try
+		{
+			readState(d);
+		}
+		finally
+		{
+			d.close();
+		}
+	}
+
+	// The format is a header, then the vertices with their coordinates,
+	// the edges, each undirected edge once, the appearance of the vertices
+	// that have one, and the hidden vertices, all as big endian ints and
+	// doubles, with names in modified UTF-8.
+
+	private static final int MAGIC = 0x52564753;
+	private static final int FORMAT = 1;
+
+	private void writeState(DataOutputStream d) throws IOException
+	{
+		d.writeInt(MAGIC);
+		d.writeInt(FORMAT);
+		d.writeBoolean(isDirected());
+		d.writeBoolean(isRunning());
+
+		int[] v = getVertices();
+		d.writeInt(v.length);
+		for (int i=0; i<v.length; i++)
+		{
+			d.writeInt(v[i]);
+			d.writeDouble(pgr.getX(v[i]));
+			d.writeDouble(pgr.getY(v[i]));
+		}
+
+		IntArray f = new IntArray();
+		IntArray t = new IntArray();
+		boolean directed = isDirected();
+		for (int i=0; i<v.length; i++)
+		{
+			int[] n = graph().outNeighbours(v[i]);
+			if (n == null)
+				continue;
+			int pi = pgr.indexOf(v[i]);
+			for (int j : n)
+			{
+				if (directed || pi <= pgr.indexOf(j))
+				{
+					f.add(v[i]);
+					t.add(j);
+				}
+			}
+		}
+
+		d.writeInt(f.size());
+		for (int i=0; i<f.size(); i++)
+		{
+			d.writeInt(f.get(i));
+			d.writeInt(t.get(i));
+		}
+
+		d.writeInt(map.size());
+		for (Map.Entry<Integer,VertexRepresentation> e : map.entrySet())
+		{
+			StringNode s = (StringNode) e.getValue();
+			d.writeInt(e.getKey());
+			d.writeUTF(s.getString());
+			d.writeInt(s.getColor().getRGB());
+			d.writeInt(s.getShape());
+			d.writeInt(s.isFixedSize() ? s.width() : -1);
+			d.writeInt(s.isFixedSize() ? s.height() : -1);
+		}
+
+		Collection<Integer> h = pgr.getHidden();
+		d.writeInt(h.size());
+		for (Integer i : h)
+			d.writeInt(i);
+	}
+
+	private void readState(DataInputStream d) throws IOException
+	{
+		if (d.readInt() != MAGIC || d.readInt() != FORMAT)
+			throw new IOException("Not a saved graph state");
+
+		boolean directed = d.readBoolean();
+		boolean running = d.readBoolean();
+		if (directed != isDirected())
+			throw new IOException("Saved graph is "+(directed ? "" : "not ")+"directed");
+
+		stop();
+		graph().clear();
+		map.clear();
+		pgr.show(new ArrayList<Integer>(pgr.getHidden()));
+
+		int n = d.readInt();
+		graph().reserve(n);
+		pgr.coords().ensureCapacity(pgr.size()+n);
+		for (int i=0; i<n; i++)
+		{
+			int v = d.readInt();
+			double x = d.readDouble();
+			double y = d.readDouble();
+			graph().add(v);
+			pgr.setCoord(v,x,y);
+		}
+
+		int m = d.readInt();
+		int[] f = new int[m];
+		int[] t = new int[m];
+		for (int i=0; i<m; i++)
+		{
+			f[i] = d.readInt();
+			t[i] = d.readInt();
+		}
+		load(f,t);
+
+		int k = d.readInt();
+		for (int i=0; i<k; i++)
+		{
+			StringNode s = find(d.readInt());
+			s.setString(d.readUTF());
+			s.setColor(new Color(d.readInt(),true));
+			s.setShape(d.readInt());
+			int w = d.readInt();
+			s.fixSize(w,d.readInt());
+		}
+
+		int h = d.readInt();
+		for (int i=0; i<h; i++)
+			pgr.hide(d.readInt());
+
+		flash();
+		if (running)
+			run();
+	}
+
 // Methods that control the GUI.
 
 	private void flash()
 	{
 		if (rgf != null)
+		{
+			rgf.wake();
 			rgf.getCanvas().repaint();
+		}
 	}
 
 	public boolean isRunning()